@@ -0,0 +1,213 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.addons.transports.undertow;
+
+import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.common.logging.LogUtils;
+import org.xnio.Option;
+import org.xnio.Options;
+
+/**
+ * Configuration of the Undertow servers started by UndertowServerEngine instances;
+ * unset values fall back to the Undertow defaults. The configuration can be
+ * set on the UndertowServerEngineFactory or provided through bus properties.
+ */
+public class UndertowEngineConfiguration
+{
+   public static final String IO_THREADS = "org.jboss.ws.undertow.ioThreads";
+   public static final String WORKER_THREADS = "org.jboss.ws.undertow.workerThreads";
+   public static final String BUFFER_SIZE = "org.jboss.ws.undertow.bufferSize";
+   public static final String DIRECT_BUFFERS = "org.jboss.ws.undertow.directBuffers";
+   public static final String BACKLOG = "org.jboss.ws.undertow.backlog";
+   public static final String HTTP2 = "org.jboss.ws.undertow.http2";
+
+   private static final Logger LOG = LogUtils.getL7dLogger(UndertowEngineConfiguration.class);
+
+   private Integer ioThreads;
+   private Integer workerThreads;
+   private Integer bufferSize;
+   private Boolean directBuffers;
+   private Integer backlog;
+   private Boolean http2;
+
+   /**
+    * Creates a configuration from the properties of the provided bus
+    * 
+    * @param bus   the bus, can be null
+    * @return the configuration
+    */
+   public static UndertowEngineConfiguration fromBus(Bus bus)
+   {
+      UndertowEngineConfiguration config = new UndertowEngineConfiguration();
+      if (bus != null)
+      {
+         config.setIoThreads(getInteger(bus, IO_THREADS));
+         config.setWorkerThreads(getInteger(bus, WORKER_THREADS));
+         config.setBufferSize(getInteger(bus, BUFFER_SIZE));
+         config.setDirectBuffers(getBoolean(bus, DIRECT_BUFFERS));
+         config.setBacklog(getInteger(bus, BACKLOG));
+         config.setHttp2(getBoolean(bus, HTTP2));
+      }
+      return config;
+   }
+
+   /**
+    * Applies this configuration to the provided Undertow builder
+    */
+   public void configure(Undertow.Builder builder)
+   {
+      if (ioThreads != null)
+      {
+         builder.setIoThreads(ioThreads);
+      }
+      if (workerThreads != null)
+      {
+         builder.setWorkerThreads(workerThreads);
+      }
+      if (bufferSize != null)
+      {
+         builder.setBufferSize(bufferSize);
+      }
+      if (directBuffers != null)
+      {
+         builder.setDirectBuffers(directBuffers);
+      }
+      if (backlog != null)
+      {
+         builder.setSocketOption(Options.BACKLOG, backlog);
+      }
+      if (http2 != null)
+      {
+         Option<Boolean> option = getHttp2Option();
+         if (option != null)
+         {
+            builder.setServerOption(option, http2);
+         }
+         else if (http2)
+         {
+            LOG.log(Level.WARNING, "HTTP/2 is not supported by the available Undertow version");
+         }
+      }
+   }
+
+   /**
+    * UndertowOptions.ENABLE_HTTP2 is not available in older Undertow versions
+    */
+   @SuppressWarnings("unchecked")
+   private static Option<Boolean> getHttp2Option()
+   {
+      try
+      {
+         return (Option<Boolean>) UndertowOptions.class.getField("ENABLE_HTTP2").get(null);
+      }
+      catch (Exception e)
+      {
+         return null;
+      }
+   }
+
+   private static Integer getInteger(Bus bus, String name)
+   {
+      Object o = bus.getProperty(name);
+      if (o instanceof String)
+      {
+         return Integer.valueOf((String) o);
+      }
+      return (o instanceof Integer) ? (Integer) o : null;
+   }
+
+   private static Boolean getBoolean(Bus bus, String name)
+   {
+      Object o = bus.getProperty(name);
+      if (o instanceof String)
+      {
+         return Boolean.valueOf((String) o);
+      }
+      return (o instanceof Boolean) ? (Boolean) o : null;
+   }
+
+   public Integer getIoThreads()
+   {
+      return ioThreads;
+   }
+
+   public void setIoThreads(Integer ioThreads)
+   {
+      this.ioThreads = ioThreads;
+   }
+
+   public Integer getWorkerThreads()
+   {
+      return workerThreads;
+   }
+
+   public void setWorkerThreads(Integer workerThreads)
+   {
+      this.workerThreads = workerThreads;
+   }
+
+   public Integer getBufferSize()
+   {
+      return bufferSize;
+   }
+
+   public void setBufferSize(Integer bufferSize)
+   {
+      this.bufferSize = bufferSize;
+   }
+
+   public Boolean getDirectBuffers()
+   {
+      return directBuffers;
+   }
+
+   public void setDirectBuffers(Boolean directBuffers)
+   {
+      this.directBuffers = directBuffers;
+   }
+
+   public Integer getBacklog()
+   {
+      return backlog;
+   }
+
+   public void setBacklog(Integer backlog)
+   {
+      this.backlog = backlog;
+   }
+
+   public Boolean getHttp2()
+   {
+      return http2;
+   }
+
+   public void setHttp2(Boolean http2)
+   {
+      this.http2 = http2;
+   }
+}
@@ -21,10 +21,17 @@
  */
 package org.jboss.wsf.stack.cxf.addons.transports.undertow;
 
+import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.SameThreadExecutor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,12 +43,23 @@ import org.apache.cxf.transport.http.DestinationRegistry;
 import org.apache.cxf.transport.http_jaxws_spi.HttpHandlerImpl;
 import org.apache.cxf.transport.http_jaxws_spi.JAXWSHttpSpiDestination;
 import org.jboss.ws.undertow_httpspi.UndertowHttpExchange;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
 
 /**
  * HTTP destination to be used with Undertow; this extends the
  * basic JAXWSHttpSpiDestination with all the mechanisms for properly
  * handling destination and factory life-cycles.
  * 
+ * Requests are processed on the IO thread by default; when dispatching is enabled
+ * (see {@link #DISPATCH}), they're dispatched to the Undertow worker pool or to the
+ * configured executor (e.g. the one set on the JAX-WS Endpoint). Optionally, the
+ * request body can be read with non-blocking calls on the IO thread before
+ * dispatching (see {@link #BUFFER_REQUEST}), so that no thread is blocked
+ * waiting for slow clients; requests whose body is bigger than the configured
+ * limit (see {@link #MAX_BUFFERED_REQUEST_SIZE}) are rejected with a 413 response.
+ * 
  * @author alessio.soldano@jboss.com
  * @author <a href="mailto:ema@redhat.com">Jim Ma</a>
  * @since 19-Aug-2010
@@ -49,11 +67,33 @@ import org.jboss.ws.undertow_httpspi.UndertowHttpExchange;
  */
 public class UndertowServerDestination extends JAXWSHttpSpiDestination
 {
+   /**
+    * Whether to dispatch requests off the IO thread (endpoint or bus property)
+    */
+   public static final String DISPATCH = "org.jboss.ws.undertow.dispatch";
+   /**
+    * The Executor to dispatch requests to (endpoint or bus property); implies dispatching
+    */
+   public static final String EXECUTOR = "org.jboss.ws.undertow.executor";
+   /**
+    * Whether to read the whole request body with non-blocking calls before dispatching (endpoint or bus property)
+    */
+   public static final String BUFFER_REQUEST = "org.jboss.ws.undertow.bufferRequest";
+   /**
+    * The max size in bytes of request bodies read before dispatching (endpoint or bus property)
+    */
+   public static final String MAX_BUFFERED_REQUEST_SIZE = "org.jboss.ws.undertow.maxBufferedRequestSize";
+   public static final long DEFAULT_MAX_BUFFERED_REQUEST_SIZE = 10 * 1024 * 1024;
+
    static final Logger LOG = LogUtils.getL7dLogger(UndertowServerDestination.class);
 
    private UndertowServerEngineFactory serverEngineFactory;
    private UndertowServerEngine engine;
    private URL url;
+   private volatile boolean dispatch;
+   private volatile boolean bufferRequest;
+   private volatile long maxBufferedRequestSize;
+   private volatile Executor executor;
 
    public UndertowServerDestination(Bus b, DestinationRegistry registry, EndpointInfo ei) throws IOException
    {
@@ -61,6 +101,71 @@ public class UndertowServerDestination extends JAXWSHttpSpiDestination
       this.serverEngineFactory = getServerEngineFactory();
       getAddressValue(ei, true); //generate address if not specified
       this.url = new URL(ei.getAddress());
+      Object o = getConfigProperty(EXECUTOR);
+      this.executor = (o instanceof Executor) ? (Executor) o : null;
+      this.dispatch = this.executor != null || isTrue(getConfigProperty(DISPATCH));
+      this.bufferRequest = isTrue(getConfigProperty(BUFFER_REQUEST));
+      o = getConfigProperty(MAX_BUFFERED_REQUEST_SIZE);
+      this.maxBufferedRequestSize = (o instanceof Number) ? ((Number) o).longValue()
+            : (o instanceof String ? Long.parseLong((String) o) : DEFAULT_MAX_BUFFERED_REQUEST_SIZE);
+   }
+
+   private Object getConfigProperty(String name)
+   {
+      Object o = endpointInfo.getProperty(name);
+      return (o != null || bus == null) ? o : bus.getProperty(name);
+   }
+
+   private static boolean isTrue(Object o)
+   {
+      return (o instanceof Boolean) ? (Boolean) o : (o instanceof String && Boolean.parseBoolean((String) o));
+   }
+
+   public boolean isDispatch()
+   {
+      return dispatch;
+   }
+
+   public void setDispatch(boolean dispatch)
+   {
+      this.dispatch = dispatch;
+   }
+
+   public boolean isBufferRequest()
+   {
+      return bufferRequest;
+   }
+
+   public void setBufferRequest(boolean bufferRequest)
+   {
+      this.bufferRequest = bufferRequest;
+   }
+
+   public long getMaxBufferedRequestSize()
+   {
+      return maxBufferedRequestSize;
+   }
+
+   public void setMaxBufferedRequestSize(long maxBufferedRequestSize)
+   {
+      this.maxBufferedRequestSize = maxBufferedRequestSize;
+   }
+
+   public Executor getExecutor()
+   {
+      return executor;
+   }
+
+   /**
+    * Sets the executor requests are dispatched to; a non-null executor also enables dispatching.
+    */
+   public void setExecutor(Executor executor)
+   {
+      this.executor = executor;
+      if (executor != null)
+      {
+         this.dispatch = true;
+      }
    }
 
    @Override
@@ -118,7 +223,21 @@ public class UndertowServerDestination extends JAXWSHttpSpiDestination
       {
          throw new Fault(e);
       }
-      engine.addHandler(addr, new Handler(this, SecurityActions.getContextClassLoader()));
+      final Handler handler = new Handler(this, SecurityActions.getContextClassLoader());
+      try
+      {
+         engine.addHandler(addr, handler);
+      }
+      catch (IllegalStateException e)
+      {
+         if (!engine.isStopped())
+         {
+            throw e;
+         }
+         //the engine has been concurrently shut down, get a new one
+         finalizeConfig();
+         engine.addHandler(addr, handler);
+      }
    }
 
    /**
@@ -144,12 +263,50 @@ public class UndertowServerDestination extends JAXWSHttpSpiDestination
 
       @Override
       public void handleRequest(HttpServerExchange exchange) throws Exception
+      {
+         if (dispatch && exchange.isInIoThread())
+         {
+            if (bufferRequest)
+            {
+               new RequestBodyReader(exchange).read(true);
+            }
+            else
+            {
+               dispatch(exchange, this);
+            }
+            return;
+         }
+         handle(exchange, null);
+      }
+
+      private void dispatch(HttpServerExchange exchange, HttpHandler handler)
+      {
+         final Executor e = executor;
+         if (e != null)
+         {
+            exchange.dispatch(e, handler);
+         }
+         else
+         {
+            exchange.dispatch(handler);
+         }
+      }
+
+      private void handle(HttpServerExchange exchange, byte[] body) throws IOException
       {
          ClassLoader origClassLoader = SecurityActions.getContextClassLoader();
+         final boolean swapClassLoader = origClassLoader != this.classLoader;
          try
          {
-            SecurityActions.setContextClassLoader(this.classLoader);
-            this.handle(new UndertowHttpExchange(exchange));
+            if (swapClassLoader)
+            {
+               SecurityActions.setContextClassLoader(this.classLoader);
+            }
+            if (!exchange.isInIoThread() && !exchange.isBlocking())
+            {
+               exchange.startBlocking();
+            }
+            this.handle(body == null ? new UndertowHttpExchange(exchange) : new BufferedUndertowHttpExchange(exchange, body));
          }
          catch (Exception e)
          {
@@ -165,10 +322,143 @@ public class UndertowServerDestination extends JAXWSHttpSpiDestination
          }
          finally
          {
-            SecurityActions.setContextClassLoader(origClassLoader);
+            if (swapClassLoader)
+            {
+               SecurityActions.setContextClassLoader(origClassLoader);
+            }
          }
          
       }
+
+      /**
+       * Reads the whole request body on the IO thread with non-blocking calls, then
+       * dispatches the request processing; bodies bigger than the max buffered request
+       * size are rejected with a 413 response.
+       */
+      private final class RequestBodyReader implements ChannelListener<StreamSourceChannel>
+      {
+         private final HttpServerExchange exchange;
+         private final StreamSourceChannel channel;
+         private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+         private final long maxSize;
+         private final long length;
+         private ByteArrayOutputStream body;
+
+         RequestBodyReader(HttpServerExchange exchange)
+         {
+            this.exchange = exchange;
+            this.channel = exchange.getRequestChannel();
+            this.maxSize = Math.min(maxBufferedRequestSize, Integer.MAX_VALUE - 8);
+            this.length = exchange.getRequestContentLength();
+         }
+
+         @Override
+         public void handleEvent(StreamSourceChannel ch)
+         {
+            read(false);
+         }
+
+         void read(boolean inCall)
+         {
+            if (body == null)
+            {
+               if (length > maxSize)
+               {
+                  reject();
+                  return;
+               }
+               body = new ByteArrayOutputStream(length > 0 ? (int) length : 8192);
+            }
+            try
+            {
+               int r;
+               while ((r = channel.read(buffer)) > 0)
+               {
+                  buffer.flip();
+                  if (body.size() + buffer.remaining() > maxSize)
+                  {
+                     reject();
+                     return;
+                  }
+                  body.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                  buffer.clear();
+               }
+               if (r == -1)
+               {
+                  channel.getReadSetter().set(null);
+                  channel.suspendReads();
+                  final byte[] data = body.toByteArray();
+                  dispatch(exchange, new HttpHandler()
+                  {
+                     @Override
+                     public void handleRequest(HttpServerExchange exchange) throws Exception
+                     {
+                        handle(exchange, data);
+                     }
+                  });
+               }
+               else if (inCall)
+               {
+                  //mark the exchange as dispatched (so that it's not ended when the handler returns),
+                  //then wait for more data on the IO thread
+                  exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable()
+                  {
+                     public void run()
+                     {
+                        channel.getReadSetter().set(RequestBodyReader.this);
+                        channel.resumeReads();
+                     }
+                  });
+               }
+               else
+               {
+                  channel.getReadSetter().set(this);
+                  channel.resumeReads();
+               }
+            }
+            catch (IOException e)
+            {
+               LOG.log(Level.FINE, "Error reading request body", e);
+               IoUtils.safeClose(channel);
+               exchange.setResponseCode(500);
+               exchange.endExchange();
+            }
+         }
+
+         /**
+          * Stops reading and sends a 413 response, closing the connection once done
+          * so that the rest of the request body is not read.
+          */
+         private void reject()
+         {
+            LOG.log(Level.FINE, "Request body exceeds the max buffered request size ({0} bytes)", maxSize);
+            channel.getReadSetter().set(null);
+            channel.suspendReads();
+            exchange.setPersistent(false);
+            exchange.setResponseCode(413);
+            exchange.endExchange();
+         }
+      }
+   }
+
+   /**
+    * An UndertowHttpExchange whose request body has already been read
+    */
+   private static final class BufferedUndertowHttpExchange extends UndertowHttpExchange
+   {
+      private final InputStream body;
+
+      BufferedUndertowHttpExchange(HttpServerExchange exchange, byte[] body)
+      {
+         super(exchange);
+         this.body = new ByteArrayInputStream(body);
+      }
+
+      @Override
+      public InputStream getRequestBody()
+      {
+         return body;
+      }
    }
 
 }
@@ -21,18 +21,22 @@
  */
 package org.jboss.wsf.stack.cxf.addons.transports.undertow;
 
+import io.undertow.Undertow;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.PathHandler;
 
 import java.net.InetSocketAddress;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.common.logging.LogUtils;
 import org.jboss.ws.undertow_httpspi.PathUtils;
-import org.jboss.ws.undertow_httpspi.UndertowServer;
 
 /**
  * A server engine that internally uses Undertow
@@ -45,13 +49,18 @@ public class UndertowServerEngine
 {
    private static final RuntimePermission START_UNDERTOW_SERVER_ENGINE = new RuntimePermission("org.jboss.ws.START_UNDERTOW_SERVER_ENGINE");
    private static final Logger LOG = LogUtils.getL7dLogger(UndertowServerEngine.class);
-   private Bus bus;
-   private UndertowServerEngineFactory factory;
-   private String host;
-   private int port;
-   private int handlerCount;
-   private String protocol = "http";
-   private UndertowServer server;
+   private final Bus bus;
+   private final UndertowServerEngineFactory factory;
+   private final String host;
+   private final int port;
+   /**
+    * The number of registered handlers, -1 once the engine has been stopped
+    */
+   private final AtomicInteger handlerCount = new AtomicInteger();
+   private final Set<String> paths = ConcurrentHashMap.newKeySet();
+   private final String protocol = "http";
+   private final PathHandler pathHandler = new PathHandler();
+   private volatile Undertow server;
 
    public UndertowServerEngine(UndertowServerEngineFactory fac, Bus bus, String host, int port)
    {
@@ -61,56 +70,146 @@ public class UndertowServerEngine
       this.port = port;
    }
 
-   public synchronized Bus getBus()
+   public Bus getBus()
    {
       return bus;
    }
 
-   public synchronized String getProtocol()
+   public String getProtocol()
    {
       return protocol;
    }
 
-   public synchronized int getPort()
+   public int getPort()
    {
       return port;
    }
 
-   public synchronized String getHost()
+   public String getHost()
    {
       return host;
    }
 
-   public synchronized void addHandler(String address, HttpHandler handler)
+   /**
+    * Adds a handler for the given address, starting the server if needed; the handler
+    * count is increased before starting the server, so that the engine can't be
+    * concurrently shut down.
+    * 
+    * @throws IllegalStateException if the engine has already been stopped
+    */
+   public void addHandler(String address, HttpHandler handler)
+   {
+      final String path = PathUtils.getContextPath(address) + PathUtils.getPath(address);
+      int count;
+      do
+      {
+         count = handlerCount.get();
+         if (count < 0)
+         {
+            throw new IllegalStateException("The server engine on port " + port + " has been stopped");
+         }
+      }
+      while (!handlerCount.compareAndSet(count, count + 1));
+      boolean added = false;
+      try
+      {
+         ensureStarted();
+         pathHandler.addExactPath(path, handler);
+         added = paths.add(path);
+      }
+      finally
+      {
+         if (!added)
+         {
+            //failure or handler replaced for an already registered path
+            decrementHandlerCount();
+         }
+      }
+   }
+
+   public void removeHandler(String address)
+   {
+      final String path = PathUtils.getContextPath(address) + PathUtils.getPath(address);
+      pathHandler.removeExactPath(path);
+      if (paths.remove(path))
+      {
+         decrementHandlerCount();
+      }
+   }
+
+   private void decrementHandlerCount()
+   {
+      int count;
+      do
+      {
+         count = handlerCount.get();
+         if (count <= 0)
+         {
+            return;
+         }
+      }
+      while (!handlerCount.compareAndSet(count, count - 1));
+   }
+
+   /**
+    * Marks the engine as stopped if it has no handlers
+    * 
+    * @return true if the engine had no handlers and is now marked as stopped
+    */
+   boolean markStoppedIfUnused()
    {
-      if (server == null) //start the server on first call
+      return handlerCount.compareAndSet(0, -1);
+   }
+
+   public boolean isStopped()
+   {
+      return handlerCount.get() < 0;
+   }
+
+   /**
+    * Starts the server on first call
+    */
+   private void ensureStarted()
+   {
+      if (server == null)
       {
-         InetSocketAddress isa = host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port);
-
-         server = new UndertowServer(isa.getPort(), isa.getHostName());
-         server.getPathHandler().addExactPath(PathUtils.getContextPath(address) + PathUtils.getPath(address), handler);
-         final SecurityManager sm = System.getSecurityManager();
-         if (sm == null) {
-            server.start();
-         } else {
-             sm.checkPermission(START_UNDERTOW_SERVER_ENGINE);
-             AccessController.doPrivileged(new PrivilegedAction<Object>() {
-                 public Object run() {
-                    server.start();
-                    return null;
-                 }
-             });
+         synchronized (this)
+         {
+            if (isStopped())
+            {
+               throw new IllegalStateException("The server engine on port " + port + " has been stopped");
+            }
+            if (server == null)
+            {
+               server = startServer();
+            }
          }
       }
-      server.getPathHandler().addExactPath(PathUtils.getContextPath(address) + PathUtils.getPath(address), handler);
-      
-      handlerCount++;
    }
 
-   public synchronized void removeHandler(String address)
+   private Undertow startServer()
    {
-      server.getPathHandler().removeExactPath(PathUtils.getContextPath(address) + PathUtils.getPath(address));
-      handlerCount--;
+      InetSocketAddress isa = host != null ? new InetSocketAddress(host, port) : new InetSocketAddress(port);
+
+      Undertow.Builder builder = Undertow.builder().addHttpListener(isa.getPort(), isa.getHostName()).setHandler(pathHandler);
+      if (factory != null)
+      {
+         factory.getEngineConfiguration().configure(builder);
+      }
+      final Undertow s = builder.build();
+      final SecurityManager sm = System.getSecurityManager();
+      if (sm == null) {
+         s.start();
+      } else {
+          sm.checkPermission(START_UNDERTOW_SERVER_ENGINE);
+          AccessController.doPrivileged(new PrivilegedAction<Object>() {
+              public Object run() {
+                 s.start();
+                 return null;
+              }
+          });
+      }
+      return s;
    }
 
    /**
@@ -118,6 +217,7 @@ public class UndertowServerEngine
     */
    protected synchronized void stop() throws Exception
    {
+      handlerCount.set(-1);
       if (server != null)
       {
          server.stop();
@@ -128,13 +228,9 @@ public class UndertowServerEngine
     * This method will shut down the server engine and
     * remove it from the factory's cache. 
     */
-   public synchronized void shutdown()
+   public void shutdown()
    {
-      if (factory != null && handlerCount == 0)
-      {
-         factory.destroyForPort(port);
-      }
-      else
+      if (factory == null || !factory.destroyIfUnused(this))
       {
          LOG.log(Level.WARNING, "FAILED_TO_SHUTDOWN_ENGINE_MSG", port);
       }
@@ -22,8 +22,8 @@
 package org.jboss.wsf.stack.cxf.addons.transports.undertow;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,10 +45,11 @@ import org.apache.cxf.common.logging.LogUtils;
 public class UndertowServerEngineFactory implements BusLifeCycleListener
 {
    private static final Logger LOG = LogUtils.getL7dLogger(UndertowServerEngineFactory.class);
-   private static final Map<Integer, UndertowServerEngine> portMap = new HashMap<Integer, UndertowServerEngine>();
+   private static final ConcurrentMap<Integer, UndertowServerEngine> portMap = new ConcurrentHashMap<Integer, UndertowServerEngine>();
 
    private BusLifeCycleManager lifeCycleManager;
    private Bus bus;
+   private volatile UndertowEngineConfiguration engineConfiguration;
 
    public UndertowServerEngineFactory(Bus b)
    {
@@ -80,67 +81,98 @@ public class UndertowServerEngineFactory implements BusLifeCycleListener
       return bus;
    }
 
+   /**
+    * Gets the configuration for the servers started by the engines created by this factory;
+    * if none has been explicitly set, the configuration is read from the bus properties.
+    */
+   public UndertowEngineConfiguration getEngineConfiguration()
+   {
+      UndertowEngineConfiguration config = engineConfiguration;
+      return config != null ? config : UndertowEngineConfiguration.fromBus(bus);
+   }
+
+   public void setEngineConfiguration(UndertowEngineConfiguration engineConfiguration)
+   {
+      this.engineConfiguration = engineConfiguration;
+   }
+
    /**
     * Retrieve a previously configured HttpServerEngine for the
     * given port. If none exists, this call returns null.
     */
-   public synchronized UndertowServerEngine retrieveHttpServerEngine(int port)
+   public UndertowServerEngine retrieveHttpServerEngine(int port)
    {
-      UndertowServerEngine engine = null;
-      synchronized(portMap)
-      {
-         engine = portMap.get(port);
-      }
-      return engine;
+      return portMap.get(port);
    }
 
-   public synchronized UndertowServerEngine createHttpServerEngine(String host, int port, String protocol)
+   public UndertowServerEngine createHttpServerEngine(String host, int port, String protocol)
          throws IOException
    {
-      if (LOG.isLoggable(Level.FINE)) {
-         LOG.fine("Creating HttpServer Engine for port " + port + ".");
-      }
-      UndertowServerEngine ref = null;
-      synchronized(portMap)
+      UndertowServerEngine ref = portMap.get(port);
+      if (null == ref)
       {
-         ref = retrieveHttpServerEngine(port);
-         if (null == ref)
-         {
-            ref = new UndertowServerEngine(this, bus, host, port);
-            portMap.put(port, ref);
+         if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Creating HttpServer Engine for port " + port + ".");
          }
-         // checking the protocol    
-         if (!protocol.equals(ref.getProtocol()))
+         //engines are cheap to create (the server is started when the first handler is added),
+         //so concurrent callers might create one each, but only the first one is registered
+         UndertowServerEngine newRef = new UndertowServerEngine(this, bus, host, port);
+         ref = portMap.putIfAbsent(port, newRef);
+         if (null == ref)
          {
-            throw new IOException("Protocol mismatch for port " + port + ": " + "engine's protocol is "
-               + ref.getProtocol() + ", the url protocol is " + protocol);
+            ref = newRef;
          }
       }
+      // checking the protocol    
+      if (!protocol.equals(ref.getProtocol()))
+      {
+         throw new IOException("Protocol mismatch for port " + port + ": " + "engine's protocol is "
+            + ref.getProtocol() + ", the url protocol is " + protocol);
+      }
       return ref;
    }
 
    /**
     * This method removes the Server Engine from the port map and stops it.
     */
-   public synchronized void destroyForPort(int port)
+   public void destroyForPort(int port)
    {
-      synchronized(portMap)
+      UndertowServerEngine ref = portMap.remove(port);
+      if (ref != null)
       {
-         UndertowServerEngine ref = portMap.remove(port);
-         if (ref != null)
-         {
-            if (LOG.isLoggable(Level.FINE)) {
-               LOG.fine("Stopping HttpServer Engine on port " + port + ".");
-            }
-            try
-            {
-               ref.stop();
-            }
-            catch (Exception e)
-            {
-               LOG.log(Level.WARNING, "", e);
-            }
-         }
+         stop(ref);
+      }
+   }
+
+   /**
+    * Removes the provided engine from the port map and stops it, unless it still has handlers;
+    * the engine is atomically marked as stopped, so that no handler can be added to it afterwards.
+    * 
+    * @return true if the engine has been stopped
+    */
+   boolean destroyIfUnused(UndertowServerEngine engine)
+   {
+      if (!engine.markStoppedIfUnused())
+      {
+         return false;
+      }
+      portMap.remove(engine.getPort(), engine);
+      stop(engine);
+      return true;
+   }
+
+   private static void stop(UndertowServerEngine engine)
+   {
+      if (LOG.isLoggable(Level.FINE)) {
+         LOG.fine("Stopping HttpServer Engine on port " + engine.getPort() + ".");
+      }
+      try
+      {
+         engine.stop();
+      }
+      catch (Exception e)
+      {
+         LOG.log(Level.WARNING, "", e);
       }
    }
 
@@ -149,16 +181,10 @@ public class UndertowServerEngineFactory implements BusLifeCycleListener
       // do nothing here
    }
 
-   public synchronized void postShutdown()
+   public void postShutdown()
    {
       // shut down the engine in the portMap
-      // To avoid the CurrentModificationException,
-      // do not use portMap.vaules directly
-      UndertowServerEngine[] engines = null;
-      synchronized (portMap) {
-         engines = portMap.values().toArray(new UndertowServerEngine[0]);
-      }
-      for (UndertowServerEngine engine : engines)
+      for (UndertowServerEngine engine : portMap.values())
       {
          if (engine.getBus() == getBus())
          {
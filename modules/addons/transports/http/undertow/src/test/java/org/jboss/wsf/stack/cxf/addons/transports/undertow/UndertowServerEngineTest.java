@@ -150,6 +150,35 @@ public class UndertowServerEngineTest extends TestCase {
       
       control.verify();
    }
+
+   public void testShutdown() throws Exception
+   {
+      control.replay();
+      factory = new UndertowServerEngineFactory(bus);
+      String urlStr = "http://localhost:9234/hello/test";
+      UndertowServerEngine engine = factory.createHttpServerEngine("localhost", 9234, "http");
+      engine.addHandler(urlStr, new MyTestHandler());
+      //removing a never registered address must not affect the handler count
+      engine.removeHandler("http://localhost:9234/hello/unknown");
+      engine.shutdown();
+      assertFalse(engine.isStopped());
+      assertTrue(engine == factory.retrieveHttpServerEngine(9234));
+      engine.removeHandler(urlStr);
+      engine.shutdown();
+      assertTrue(engine.isStopped());
+      assertNull(factory.retrieveHttpServerEngine(9234));
+      try
+      {
+         engine.addHandler(urlStr, new MyTestHandler());
+         fail("Exception expected when adding a handler to a stopped engine");
+      }
+      catch (IllegalStateException e)
+      {
+         //expected
+      }
+      
+      control.verify();
+   }
    
    private void pingServer(URL url)
    {
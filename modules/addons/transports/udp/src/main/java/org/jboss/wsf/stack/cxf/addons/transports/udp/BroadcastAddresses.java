@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.addons.transports.udp;
+
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * The broadcast addresses of the up and running non-loopback network interfaces;
+ * the list is cached and refreshed periodically, to avoid enumerating the network
+ * interfaces each time a datagram is broadcasted.
+ */
+final class BroadcastAddresses
+{
+   private static final long REFRESH_INTERVAL = 60000;
+
+   private static volatile BroadcastAddresses current;
+
+   private final List<InetAddress> addresses;
+
+   private final long timestamp;
+
+   private BroadcastAddresses(List<InetAddress> addresses)
+   {
+      this.addresses = addresses;
+      this.timestamp = System.currentTimeMillis();
+   }
+
+   static List<InetAddress> get() throws SocketException
+   {
+      BroadcastAddresses ba = current;
+      if (ba == null || System.currentTimeMillis() - ba.timestamp > REFRESH_INTERVAL)
+      {
+         ba = new BroadcastAddresses(lookup());
+         current = ba;
+      }
+      return ba.addresses;
+   }
+
+   private static List<InetAddress> lookup() throws SocketException
+   {
+      List<InetAddress> list = new ArrayList<InetAddress>();
+      Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+      while (interfaces.hasMoreElements())
+      {
+         NetworkInterface networkInterface = interfaces.nextElement();
+         if (!networkInterface.isUp() || networkInterface.isLoopback())
+         {
+            continue;
+         }
+         for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses())
+         {
+            InetAddress broadcast = interfaceAddress.getBroadcast();
+            if (broadcast != null)
+            {
+               list.add(broadcast);
+            }
+         }
+      }
+      return Collections.unmodifiableList(list);
+   }
+}
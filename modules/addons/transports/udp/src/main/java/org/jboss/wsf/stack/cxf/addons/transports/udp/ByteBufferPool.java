@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.addons.transports.udp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of direct ByteBuffers, each large enough for any datagram.
+ * Buffers not returned to the pool are simply garbage collected.
+ */
+final class ByteBufferPool
+{
+   static final int BUFFER_SIZE = 64 * 1024;
+
+   private final int maxPooled;
+   private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+   private final AtomicInteger pooled = new AtomicInteger();
+
+   ByteBufferPool(int maxPooled)
+   {
+      this.maxPooled = maxPooled;
+   }
+
+   ByteBuffer acquire()
+   {
+      ByteBuffer buffer = buffers.poll();
+      if (buffer == null)
+      {
+         return ByteBuffer.allocateDirect(BUFFER_SIZE);
+      }
+      pooled.decrementAndGet();
+      buffer.clear();
+      return buffer;
+   }
+
+   void release(ByteBuffer buffer)
+   {
+      if (buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE)
+      {
+         return;
+      }
+      if (pooled.incrementAndGet() <= maxPooled)
+      {
+         buffers.offer(buffer);
+      }
+      else
+      {
+         pooled.decrementAndGet();
+      }
+   }
+
+   /**
+    * An OutputStream writing to a pooled ByteBuffer, which is acquired on the first
+    * write (so that no buffer is held by streams which are never written nor closed);
+    * when more data than the buffer capacity is written, the content is moved to a
+    * larger heap buffer (which is going to be rejected when sent, as it does not fit
+    * a datagram anyway).
+    */
+   static class ByteBufferOutputStream extends OutputStream
+   {
+      protected final ByteBufferPool pool;
+      private ByteBuffer buffer;
+      private boolean closed;
+
+      ByteBufferOutputStream(ByteBufferPool pool)
+      {
+         this.pool = pool;
+      }
+
+      @Override
+      public void write(int b) throws IOException
+      {
+         ensureCapacity(1);
+         buffer.put((byte)b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException
+      {
+         ensureCapacity(len);
+         buffer.put(b, off, len);
+      }
+
+      private void ensureCapacity(int len) throws IOException
+      {
+         if (closed)
+         {
+            throw new IOException("Stream closed");
+         }
+         if (buffer == null)
+         {
+            buffer = pool.acquire();
+         }
+         if (buffer.remaining() < len)
+         {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + len));
+            buffer.flip();
+            larger.put(buffer);
+            pool.release(buffer);
+            buffer = larger;
+         }
+      }
+
+      /**
+       * Flips the buffer and returns it for reading the written data
+       */
+      protected ByteBuffer getWrittenData()
+      {
+         if (buffer == null)
+         {
+            return ByteBuffer.allocate(0);
+         }
+         buffer.flip();
+         return buffer;
+      }
+
+      protected boolean isClosed()
+      {
+         return closed;
+      }
+
+      /**
+       * Marks the stream as closed and returns the buffer (if any) to the pool
+       */
+      protected void releaseBuffer()
+      {
+         closed = true;
+         pool.release(buffer);
+         buffer = null;
+      }
+   }
+}
@@ -0,0 +1,153 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.addons.transports.udp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A hashed timer wheel, meant to be used by a single thread (the one
+ * scheduling the timeouts and periodically advancing the wheel); timeouts
+ * can be cancelled by any thread.
+ */
+final class TimerWheel
+{
+   private final long tickMillis;
+
+   private final long startTime;
+
+   private final List<Timeout>[] slots;
+
+   private final int mask;
+
+   private long currentTick;
+
+   private int size;
+
+   /**
+    * @param tickMillis    the tick duration, in milliseconds
+    * @param wheelSize     the number of slots, rounded up to a power of two
+    * @param now           the current time, in milliseconds
+    */
+   @SuppressWarnings("unchecked")
+   TimerWheel(long tickMillis, int wheelSize, long now)
+   {
+      int n = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+      this.tickMillis = tickMillis;
+      this.startTime = now;
+      this.slots = new List[n];
+      for (int i = 0; i < n; i++)
+      {
+         slots[i] = new ArrayList<Timeout>();
+      }
+      this.mask = n - 1;
+   }
+
+   Timeout schedule(Runnable task, long delayMillis, long now)
+   {
+      long deadlineTick = (now + delayMillis - startTime + tickMillis - 1) / tickMillis;
+      if (deadlineTick < currentTick)
+      {
+         deadlineTick = currentTick;
+      }
+      Timeout timeout = new Timeout(task, deadlineTick);
+      slots[(int)(deadlineTick & mask)].add(timeout);
+      size++;
+      return timeout;
+   }
+
+   /**
+    * Advances the wheel up to the current time, returning the tasks of the expired timeouts
+    */
+   List<Runnable> advance(long now)
+   {
+      final long targetTick = (now - startTime) / tickMillis;
+      if (size == 0)
+      {
+         currentTick = Math.max(currentTick, targetTick + 1);
+         return null;
+      }
+      List<Runnable> expired = null;
+      while (currentTick <= targetTick && size > 0)
+      {
+         Iterator<Timeout> it = slots[(int)(currentTick & mask)].iterator();
+         while (it.hasNext())
+         {
+            Timeout t = it.next();
+            if (t.cancelled)
+            {
+               it.remove();
+               size--;
+            }
+            else if (t.deadlineTick <= currentTick)
+            {
+               it.remove();
+               size--;
+               if (expired == null)
+               {
+                  expired = new ArrayList<Runnable>();
+               }
+               expired.add(t.task);
+            }
+         }
+         currentTick++;
+      }
+      if (size == 0)
+      {
+         currentTick = Math.max(currentTick, targetTick + 1);
+      }
+      return expired;
+   }
+
+   /**
+    * @return the milliseconds to the next tick, or 0 if there are no pending timeouts
+    */
+   long nextDelay(long now)
+   {
+      if (size == 0)
+      {
+         return 0;
+      }
+      return Math.max(1, startTime + currentTick * tickMillis - now);
+   }
+
+   static final class Timeout
+   {
+      private final Runnable task;
+
+      private final long deadlineTick;
+
+      private volatile boolean cancelled;
+
+      private Timeout(Runnable task, long deadlineTick)
+      {
+         this.task = task;
+         this.deadlineTick = deadlineTick;
+      }
+
+      void cancel()
+      {
+         cancelled = true;
+      }
+   }
+}
@@ -25,15 +25,17 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.InterfaceAddress;
-import java.net.MulticastSocket;
-import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
 import java.net.URI;
-import java.util.Enumeration;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -41,15 +43,31 @@ import org.apache.cxf.Bus;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.common.util.StringUtils;
 import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
+import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageImpl;
 import org.apache.cxf.transport.AbstractConduit;
+import org.apache.cxf.transport.MessageObserver;
+import org.apache.cxf.workqueue.AutomaticWorkQueue;
+import org.apache.cxf.workqueue.WorkQueueManager;
+import org.apache.cxf.ws.addressing.AddressingProperties;
+import org.apache.cxf.ws.addressing.ContextUtils;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.jboss.wsf.stack.cxf.addons.transports.udp.UDPResponseDispatcher.Registration;
+import org.jboss.wsf.stack.cxf.addons.transports.udp.UDPResponseDispatcher.ResponseHandler;
 
 /**
  * A modified version of Apache CXF org.apache.cxf.transport.udp.UDPConduit
- * that does not rely on Apache Mina and directly uses basic java.io for
- * any type of datagram.
+ * that does not rely on Apache Mina and directly uses NIO datagram channels
+ * for any type of datagram.
+ * 
+ * Requests with a WS-Addressing MessageID are sent through a datagram channel
+ * shared by all the conduits of the bus, whose responses are correlated to
+ * requests using the RelatesTo header; other requests (whose responses can't be
+ * correlated) each use a dedicated channel. Responses are received by a single
+ * selector thread, which is also shared at bus level; asynchronous requests
+ * return as soon as the datagrams are sent and responses are delivered to the
+ * incoming observer on the work queue.
  * 
  * @author alessio.soldano@jboss.com
  */
@@ -57,16 +75,65 @@ public class UDPConduit extends AbstractConduit
 {
    private static final String MULTI_RESPONSE_TIMEOUT = "udp.multi.response.timeout";
 
+   private static final int RESPONSE_TIMEOUT = 30000;
+
    private static final Logger LOG = LogUtils.getL7dLogger(UDPDestination.class);
 
    Bus bus;
 
+   private volatile UDPResponseDispatcher dispatcher;
+
+   private volatile AutomaticWorkQueue queue;
+
    public UDPConduit(EndpointReferenceType t, final Bus bus)
    {
       super(t);
       this.bus = bus;
    }
 
+   private UDPResponseDispatcher getDispatcher() throws IOException
+   {
+      UDPResponseDispatcher d = dispatcher;
+      if (d == null || d.isClosed())
+      {
+         d = UDPResponseDispatcher.getInstance(bus);
+         dispatcher = d;
+      }
+      return d;
+   }
+
+   private AutomaticWorkQueue getWorkQueue()
+   {
+      if (queue == null)
+      {
+         WorkQueueManager queuem = bus.getExtension(WorkQueueManager.class);
+         AutomaticWorkQueue q = queuem.getNamedWorkQueue("udp-transport");
+         if (q == null)
+         {
+            q = queuem.getAutomaticWorkQueue();
+         }
+         queue = q;
+      }
+      return queue;
+   }
+
+   /**
+    * Runs the provided response callback on the work queue; this is invoked by the
+    * dispatcher selector thread, hence rejected callbacks are dropped (and logged)
+    * instead of being run inline, which would block the receive loop.
+    */
+   private void execute(Runnable r)
+   {
+      try
+      {
+         getWorkQueue().execute(r);
+      }
+      catch (RejectedExecutionException e)
+      {
+         LOG.log(Level.SEVERE, "UDP response dropped, work queue rejected the task: " + e.toString());
+      }
+   }
+
    private void dataReceived(Message message, byte bytes[], boolean async)
    {
       final Message inMessage = new MessageImpl();
@@ -80,6 +147,25 @@ public class UDPConduit extends AbstractConduit
       }
    }
 
+   private void failed(Message message, Exception ex)
+   {
+      message.setContent(Exception.class, ex);
+      message.getExchange().put(Exception.class, ex);
+      MessageObserver mo = message.getInterceptorChain() != null ? message.getInterceptorChain().getFaultObserver() : null;
+      if (mo == null)
+      {
+         mo = message.getExchange().get(MessageObserver.class);
+      }
+      if (mo != null)
+      {
+         mo.onMessage(message);
+      }
+      else
+      {
+         LOG.log(Level.SEVERE, ex.toString());
+      }
+   }
+
    public void prepare(final Message message) throws IOException
    {
       try
@@ -118,6 +204,110 @@ public class UDPConduit extends AbstractConduit
       message.setContent(OutputStream.class, new SocketOutputStream(port, isa, message));
    }
 
+   private static String getMessageId(Message message)
+   {
+      AddressingProperties maps = ContextUtils.retrieveMAPs(message, false, true, false);
+      if (maps != null && maps.getMessageID() != null)
+      {
+         return maps.getMessageID().getValue();
+      }
+      return null;
+   }
+
+   private static Integer getMultiResponseTimeout(Message message)
+   {
+      Object to = message.getContextualProperty(MULTI_RESPONSE_TIMEOUT);
+      Integer i = null;
+      if (to instanceof String)
+      {
+         i = Integer.parseInt((String) to);
+      }
+      else if (to instanceof Integer)
+      {
+         i = (Integer) to;
+      }
+      return i;
+   }
+
+   /**
+    * Collects the responses of a synchronous request, which are processed by the caller thread
+    */
+   private static final class SyncResponseHandler implements ResponseHandler
+   {
+      private static final byte[] TIMED_OUT = new byte[0];
+
+      private final BlockingQueue<byte[]> responses = new LinkedBlockingQueue<byte[]>();
+
+      public void responseReceived(byte[] data)
+      {
+         responses.offer(data);
+      }
+
+      public void timedOut()
+      {
+         responses.offer(TIMED_OUT);
+      }
+
+      byte[] poll(long timeout) throws IOException
+      {
+         try
+         {
+            byte[] data = responses.poll(timeout, TimeUnit.MILLISECONDS);
+            return data == TIMED_OUT ? null : data;
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+         }
+      }
+   }
+
+   /**
+    * Delivers the responses of an asynchronous request to the incoming observer on the work queue
+    */
+   private final class AsyncResponseHandler implements ResponseHandler
+   {
+      private final Message message;
+
+      private boolean found;
+
+      AsyncResponseHandler(Message message)
+      {
+         this.message = message;
+      }
+
+      public void responseReceived(final byte[] data)
+      {
+         found = true;
+         execute(new Runnable()
+         {
+            public void run()
+            {
+               //multiple responses to the same exchange are processed one at a time
+               synchronized (AsyncResponseHandler.this)
+               {
+                  dataReceived(message, data, true);
+               }
+            }
+         });
+      }
+
+      public void timedOut()
+      {
+         if (!found)
+         {
+            execute(new Runnable()
+            {
+               public void run()
+               {
+                  failed(message, new SocketTimeoutException());
+               }
+            });
+         }
+      }
+   }
+
    private final class SocketOutputStream extends LoadingByteArrayOutputStream
    {
       private final int port;
@@ -136,98 +326,84 @@ public class UDPConduit extends AbstractConduit
       public void close() throws IOException
       {
          super.close();
-         DatagramSocket socket = (isa != null) ? new MulticastSocket(null) : new DatagramSocket();
-         socket.setSendBufferSize(this.size());
-         socket.setReceiveBufferSize(64 * 1024);
-         socket.setBroadcast(true);
+         final UDPResponseDispatcher d = getDispatcher();
+         final Exchange exchange = message.getExchange();
+         if (exchange.isOneWay())
+         {
+            sendDatagrams(d, null);
+            return;
+         }
 
-         if (isa == null) //broadcast
+         final boolean async = !exchange.isSynchronous();
+         final Integer i = getMultiResponseTimeout(message);
+         final boolean multi = async && i != null && i > 0;
+         final ResponseHandler handler = async ? new AsyncResponseHandler(message) : new SyncResponseHandler();
+         //synchronous requests are timed out by the caller thread
+         final long timeout = async ? (multi ? i : RESPONSE_TIMEOUT) : 0;
+
+         final String messageId = getMessageId(message);
+         final DatagramChannel dedicated = messageId != null ? null : UDPResponseDispatcher.openChannel();
+         final Registration reg = dedicated != null ? d.register(dedicated, handler, multi, timeout) : d.register(messageId, handler, multi, timeout);
+         try
          {
-            Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-            while (interfaces.hasMoreElements())
-            {
-               NetworkInterface networkInterface = interfaces.nextElement();
-               if (!networkInterface.isUp() || networkInterface.isLoopback())
-               {
-                  continue;
-               }
-               for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses())
-               {
-                  InetAddress broadcast = interfaceAddress.getBroadcast();
-                  if (broadcast == null)
-                  {
-                     continue;
-                  }
-                  DatagramPacket sendPacket = new DatagramPacket(this.getRawBytes(), 0, this.size(), broadcast, port);
-                  try
-                  {
-                     socket.send(sendPacket);
-                  }
-                  catch (Exception e)
-                  {
-                     //ignore
-                     LOG.log(Level.FINEST, e.getMessage(), e);
-                  }
-               }
-            }
+            sendDatagrams(d, dedicated);
          }
-         else
+         catch (IOException e)
+         {
+            d.cancel(reg);
+            throw e;
+         }
+         if (!async)
          {
-            DatagramPacket sendPacket = new DatagramPacket(this.getRawBytes(), 0, this.size(), isa);
             try
             {
-               socket.send(sendPacket);
+               byte[] data = ((SyncResponseHandler) handler).poll(RESPONSE_TIMEOUT);
+               if (data == null)
+               {
+                  throw new SocketTimeoutException();
+               }
+               dataReceived(message, data, false);
             }
-            catch (Exception e)
+            finally
             {
-               //ignore
-               LOG.log(Level.FINEST, e.getMessage(), e);
+               d.cancel(reg);
             }
          }
+      }
 
-         if (!message.getExchange().isOneWay())
+      private void sendDatagrams(UDPResponseDispatcher d, DatagramChannel dedicated) throws IOException
+      {
+         if (isa == null) //broadcast
          {
-            byte bytes[] = new byte[64 * 1024];
-            DatagramPacket p = new DatagramPacket(bytes, bytes.length);
-            Object to = message.getContextualProperty(MULTI_RESPONSE_TIMEOUT);
-            Integer i = null;
-            if (to instanceof String)
-            {
-               i = Integer.parseInt((String) to);
-            }
-            else if (to instanceof Integer)
+            for (InetAddress broadcast : BroadcastAddresses.get())
             {
-               i = (Integer) to;
+               sendDatagram(d, dedicated, new InetSocketAddress(broadcast, port));
             }
-            if (i == null || i <= 0 || message.getExchange().isSynchronous())
+         }
+         else
+         {
+            sendDatagram(d, dedicated, isa);
+         }
+      }
+
+      private void sendDatagram(UDPResponseDispatcher d, DatagramChannel dedicated, SocketAddress target)
+      {
+         try
+         {
+            if (dedicated != null)
             {
-               socket.setSoTimeout(30000);
-               socket.receive(p);
-               dataReceived(message, bytes, false);
+               dedicated.send(ByteBuffer.wrap(this.getRawBytes(), 0, this.size()), target);
             }
             else
             {
-               socket.setSoTimeout(i);
-               boolean found = false;
-               try
-               {
-                  while (true)
-                  {
-                     socket.receive(p);
-                     dataReceived(message, bytes, false);
-                     found = true;
-                  }
-               }
-               catch (java.net.SocketTimeoutException ex)
-               {
-                  if (!found)
-                  {
-                     throw ex;
-                  }
-               }
+               d.send(this.getRawBytes(), this.size(), target);
             }
          }
-         socket.close();
+         catch (Exception e)
+         {
+            //ignore
+            LOG.log(Level.FINEST, e.getMessage(), e);
+         }
       }
    }
 
@@ -25,18 +25,26 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Enumeration;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.common.logging.LogUtils;
 import org.apache.cxf.common.util.StringUtils;
-import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
 import org.apache.cxf.message.Exchange;
 import org.apache.cxf.message.ExchangeImpl;
 import org.apache.cxf.message.Message;
@@ -47,21 +55,41 @@ import org.apache.cxf.transport.Conduit;
 import org.apache.cxf.workqueue.AutomaticWorkQueue;
 import org.apache.cxf.workqueue.WorkQueueManager;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.jboss.wsf.stack.cxf.addons.transports.udp.ByteBufferPool.ByteBufferOutputStream;
 
 /**
  * A modified version of Apache CXF org.apache.cxf.transport.udp.UDPDestination
- * that does not rely on Apache Mina and directly uses basic java.io for any
- * type of datagram.
+ * that does not rely on Apache Mina and directly uses NIO datagram channels
+ * for any type of datagram.
+ * 
+ * Datagrams are received into pooled direct buffers and copied into exact-size
+ * heap arrays for the messages, so that the buffers are returned to the pool
+ * straight away (messages might be processed on other threads after the observer
+ * returns, e.g. one-way ones); replies are sent straight from pooled buffers.
+ * Unicast destinations can be served by multiple receive loops (see
+ * {@link #RECEIVE_THREADS}), each with its own channel bound to the same
+ * address using SO_REUSEPORT, when that is supported by the platform.
  * 
  * @author alessio.soldano@jboss.com
  */
 public class UDPDestination extends AbstractDestination
 {
+   /**
+    * The number of receive loops for unicast addresses (endpoint or bus property)
+    */
+   public static final String RECEIVE_THREADS = "udp.receive.threads";
+
    private static final Logger LOG = LogUtils.getL7dLogger(UDPDestination.class);
 
+   private static final SocketOption<Boolean> SO_REUSEPORT = getReusePortOption();
+
+   private static final int MAX_POOLED_BUFFERS = 64;
+
    AutomaticWorkQueue queue;
 
-   volatile DatagramSocket socket;
+   final ByteBufferPool bufferPool = new ByteBufferPool(MAX_POOLED_BUFFERS);
+
+   volatile DatagramChannel[] channels;
 
    public UDPDestination(Bus b, EndpointReferenceType ref, EndpointInfo ei)
    {
@@ -70,53 +98,101 @@ public class UDPDestination extends AbstractDestination
 
    class SocketListener implements Runnable
    {
+      private final DatagramChannel channel;
+
+      SocketListener(DatagramChannel channel)
+      {
+         this.channel = channel;
+      }
+
       public void run()
       {
-         while (true)
+         while (channel.isOpen())
          {
-            if (socket == null)
+            final ByteBuffer buffer = bufferPool.acquire();
+            try
             {
-               return;
+               SocketAddress source = channel.receive(buffer);
+               buffer.flip();
+               byte[] data = new byte[buffer.remaining()];
+               buffer.get(data);
+               dispatch(channel, data, source);
             }
-            try
+            catch (ClosedChannelException e)
             {
-               byte bytes[] = new byte[64 * 1024];
-               final DatagramPacket p = new DatagramPacket(bytes, bytes.length);
-               socket.receive(p);
-
-               LoadingByteArrayOutputStream out = new LoadingByteArrayOutputStream()
-               {
-                  public void close() throws IOException
-                  {
-                     super.close();
-                     final DatagramPacket p2 = new DatagramPacket(getRawBytes(), 0, this.size(), p.getSocketAddress());
-                     socket.send(p2);
-                  }
-               };
-
-               UDPConnectionInfo info = new UDPConnectionInfo(out, new ByteArrayInputStream(bytes, 0, p.getLength()));
-
-               final MessageImpl m = new MessageImpl();
-               final Exchange exchange = new ExchangeImpl();
-               exchange.setDestination(UDPDestination.this);
-               m.setDestination(UDPDestination.this);
-               exchange.setInMessage(m);
-               m.setContent(InputStream.class, info.in);
-               m.put(UDPConnectionInfo.class, info);
-               queue.execute(new Runnable()
-               {
-                  public void run()
-                  {
-                     getMessageObserver().onMessage(m);
-                  }
-               });
+               return;
             }
             catch (IOException e)
             {
-               if (socket != null) {
+               if (channel.isOpen()) {
                   LOG.log(Level.SEVERE, e.toString());
                }
             }
+            finally
+            {
+               bufferPool.release(buffer);
+            }
+         }
+      }
+   }
+
+   private void dispatch(DatagramChannel channel, byte[] data, SocketAddress source)
+   {
+      UDPConnectionInfo info = new UDPConnectionInfo(new DatagramOutputStream(channel, source), new ByteArrayInputStream(data));
+
+      final MessageImpl m = new MessageImpl();
+      final Exchange exchange = new ExchangeImpl();
+      exchange.setDestination(UDPDestination.this);
+      m.setDestination(UDPDestination.this);
+      exchange.setInMessage(m);
+      m.setContent(InputStream.class, info.in);
+      m.put(UDPConnectionInfo.class, info);
+      try
+      {
+         queue.execute(new Runnable()
+         {
+            public void run()
+            {
+               getMessageObserver().onMessage(m);
+            }
+         });
+      }
+      catch (RejectedExecutionException e)
+      {
+         LOG.log(Level.SEVERE, e.toString());
+      }
+   }
+
+   /**
+    * The reply OutputStream, sending the datagram straight from the pooled buffer on close
+    */
+   private final class DatagramOutputStream extends ByteBufferOutputStream
+   {
+      private final DatagramChannel channel;
+
+      private final SocketAddress target;
+
+      DatagramOutputStream(DatagramChannel channel, SocketAddress target)
+      {
+         super(bufferPool);
+         this.channel = channel;
+         this.target = target;
+      }
+
+      @Override
+      public void close() throws IOException
+      {
+         if (isClosed())
+         {
+            return;
+         }
+         try
+         {
+            channel.send(getWrittenData(), target);
+         }
+         finally
+         {
+            releaseBuffer();
          }
       }
    }
@@ -177,24 +253,33 @@ public class UDPDestination extends AbstractDestination
          {
             isa = new InetSocketAddress(uri.getHost(), uri.getPort());
          }
-         DatagramSocket s;
-         if (isa.getAddress().isMulticastAddress())
+         final boolean multicast = isa.getAddress() != null && isa.getAddress().isMulticastAddress();
+         int threads = multicast ? 1 : getReceiveThreads();
+         if (threads > 1 && !isReusePortSupported())
          {
-            s = new MulticastSocket(null);
-            ((MulticastSocket) s).setTimeToLive(1);
-            s.bind(new InetSocketAddress(isa.getPort()));
-            ((MulticastSocket) s).joinGroup(isa.getAddress());
+            LOG.log(Level.WARNING, "SO_REUSEPORT is not supported, using a single receive thread for " + isa);
+            threads = 1;
          }
-         else
+         final DatagramChannel[] chs = new DatagramChannel[threads];
+         try
+         {
+            for (int i = 0; i < threads; i++)
+            {
+               chs[i] = openChannel(isa, multicast, threads > 1);
+            }
+         }
+         catch (IOException e)
+         {
+            close(chs);
+            throw e;
+         }
+         channels = chs;
+         for (int i = 0; i < threads; i++)
          {
-            s = new DatagramSocket(null);
-            s.bind(new InetSocketAddress(isa.getAddress(), isa.getPort()));
+            Thread t = new Thread(new SocketListener(chs[i]), "udp-listener-" + isa.getPort() + "-" + i);
+            t.setDaemon(true);
+            t.start();
          }
-         s.setReuseAddress(true);
-         s.setReceiveBufferSize(64 * 1024);
-         s.setSendBufferSize(64 * 1024);
-         socket = s;
-         queue.execute(new SocketListener());
       }
       catch (Exception ex)
       {
@@ -205,11 +290,148 @@ public class UDPDestination extends AbstractDestination
 
    protected void deactivate()
    {
-      if (socket != null)
+      if (channels != null)
+      {
+         DatagramChannel[] chs = channels;
+         channels = null;
+         close(chs);
+      }
+   }
+
+   private static DatagramChannel openChannel(InetSocketAddress isa, boolean multicast, boolean reusePort) throws IOException
+   {
+      DatagramChannel ch;
+      if (multicast)
+      {
+         final boolean ipv6 = isa.getAddress() instanceof Inet6Address;
+         ch = DatagramChannel.open(ipv6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+         configure(ch, reusePort);
+         ch.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+         ch.bind(new InetSocketAddress(InetAddress.getByName(ipv6 ? "::" : "0.0.0.0"), isa.getPort()));
+         joinGroup(ch, isa.getAddress());
+      }
+      else
+      {
+         ch = DatagramChannel.open();
+         configure(ch, reusePort);
+         ch.bind(new InetSocketAddress(isa.getAddress(), isa.getPort()));
+      }
+      return ch;
+   }
+
+   private static void configure(DatagramChannel ch, boolean reusePort) throws IOException
+   {
+      ch.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+      if (reusePort)
+      {
+         ch.setOption(SO_REUSEPORT, true);
+      }
+      ch.setOption(StandardSocketOptions.SO_RCVBUF, ByteBufferPool.BUFFER_SIZE);
+      ch.setOption(StandardSocketOptions.SO_SNDBUF, ByteBufferPool.BUFFER_SIZE);
+   }
+
+   private static void joinGroup(DatagramChannel ch, InetAddress group) throws IOException
+   {
+      int joined = 0;
+      Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+      while (interfaces.hasMoreElements())
+      {
+         NetworkInterface ni = interfaces.nextElement();
+         if (!ni.isUp() || !ni.supportsMulticast())
+         {
+            continue;
+         }
+         try
+         {
+            ch.join(group, ni);
+            joined++;
+         }
+         catch (IOException e)
+         {
+            //interface not supporting the group address family, ignore
+            LOG.log(Level.FINEST, e.getMessage(), e);
+         }
+      }
+      if (joined == 0)
+      {
+         throw new IOException("Could not join multicast group " + group + " on any network interface");
+      }
+   }
+
+   private static void close(DatagramChannel[] chs)
+   {
+      for (DatagramChannel ch : chs)
+      {
+         if (ch != null)
+         {
+            try
+            {
+               ch.close();
+            }
+            catch (IOException e)
+            {
+               LOG.log(Level.FINEST, e.getMessage(), e);
+            }
+         }
+      }
+   }
+
+   private int getReceiveThreads()
+   {
+      Object o = endpointInfo.getProperty(RECEIVE_THREADS);
+      if (o == null)
+      {
+         o = bus.getProperty(RECEIVE_THREADS);
+      }
+      Integer i = null;
+      if (o instanceof String)
+      {
+         i = Integer.parseInt((String) o);
+      }
+      else if (o instanceof Integer)
+      {
+         i = (Integer) o;
+      }
+      return (i == null || i < 1) ? 1 : i;
+   }
+
+   private static boolean isReusePortSupported()
+   {
+      if (SO_REUSEPORT == null)
+      {
+         return false;
+      }
+      try
+      {
+         DatagramChannel ch = DatagramChannel.open();
+         try
+         {
+            return ch.supportedOptions().contains(SO_REUSEPORT);
+         }
+         finally
+         {
+            ch.close();
+         }
+      }
+      catch (IOException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * StandardSocketOptions.SO_REUSEPORT is available since Java 9 only
+    */
+   @SuppressWarnings("unchecked")
+   private static SocketOption<Boolean> getReusePortOption()
+   {
+      try
       {
-         DatagramSocket s = socket;
-         socket = null;
-         s.close();
+         return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+      }
+      catch (Exception e)
+      {
+         return null;
       }
    }
 
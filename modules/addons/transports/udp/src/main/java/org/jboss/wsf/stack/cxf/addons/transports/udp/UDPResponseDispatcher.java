@@ -0,0 +1,551 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.addons.transports.udp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.buslifecycle.BusLifeCycleListener;
+import org.apache.cxf.buslifecycle.BusLifeCycleManager;
+import org.apache.cxf.common.logging.LogUtils;
+import org.apache.cxf.staxutils.StaxUtils;
+import org.apache.cxf.ws.addressing.Names;
+
+/**
+ * A selector thread serving the requests sent through a UDPConduit.
+ * 
+ * Requests with a WS-Addressing MessageID share a single datagram channel and
+ * responses are handed to the pending request they relate to, according to the
+ * WS-Addressing RelatesTo header; requests whose responses can't be correlated
+ * that way use a dedicated channel, which is registered with the same selector.
+ * Response timeouts (including the multiple responses collection window) are
+ * tracked by a timer wheel advanced by the selector thread, hence no thread is
+ * blocked waiting for responses to asynchronous requests.
+ * A single dispatcher is shared by all the conduits of a bus: it's registered as a
+ * bus extension and closed when the bus is shut down.
+ */
+final class UDPResponseDispatcher implements Runnable
+{
+   private static final Logger LOG = LogUtils.getL7dLogger(UDPResponseDispatcher.class);
+
+   private static final String WSA_200408_NAMESPACE_NAME = "http://schemas.xmlsoap.org/ws/2004/08/addressing";
+   private static final String SOAP11_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+   private static final String SOAP12_NAMESPACE = "http://www.w3.org/2003/05/soap-envelope";
+
+   private static final long TIMER_TICK = 50;
+   private static final int TIMER_WHEEL_SIZE = 512;
+
+   /**
+    * Callback for the responses of a registered request; methods are invoked
+    * by the selector thread, hence implementations are not expected to block.
+    */
+   interface ResponseHandler
+   {
+      void responseReceived(byte[] data);
+
+      /**
+       * Invoked when the registration timeout expires or the dispatcher is closed
+       */
+      void timedOut();
+   }
+
+   private final Selector selector;
+
+   private final DatagramChannel channel;
+
+   private final ConcurrentMap<String, Registration> pending = new ConcurrentHashMap<String, Registration>();
+
+   private final Set<Registration> registrations = Collections.newSetFromMap(new ConcurrentHashMap<Registration, Boolean>());
+
+   private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+   private final TimerWheel timers = new TimerWheel(TIMER_TICK, TIMER_WHEEL_SIZE, System.currentTimeMillis());
+
+   private final ByteBuffer buffer = ByteBuffer.allocateDirect(ByteBufferPool.BUFFER_SIZE);
+
+   private volatile boolean closed;
+
+   private UDPResponseDispatcher(Selector selector, DatagramChannel channel)
+   {
+      this.selector = selector;
+      this.channel = channel;
+   }
+
+   /**
+    * Gets the dispatcher of the provided bus, opening it if required
+    * 
+    * @param bus   the bus
+    * @return the dispatcher
+    * @throws IOException
+    */
+   static UDPResponseDispatcher getInstance(Bus bus) throws IOException
+   {
+      synchronized (UDPResponseDispatcher.class)
+      {
+         UDPResponseDispatcher dispatcher = bus.getExtension(UDPResponseDispatcher.class);
+         if (dispatcher == null || dispatcher.closed)
+         {
+            final UDPResponseDispatcher d = open();
+            final BusLifeCycleManager lcm = bus.getExtension(BusLifeCycleManager.class);
+            if (lcm != null)
+            {
+               lcm.registerLifeCycleListener(new BusLifeCycleListener()
+               {
+                  public void initComplete()
+                  {
+                     //NOOP
+                  }
+
+                  public void preShutdown()
+                  {
+                     //NOOP
+                  }
+
+                  public void postShutdown()
+                  {
+                     d.close();
+                  }
+               });
+            }
+            bus.setExtension(d, UDPResponseDispatcher.class);
+            dispatcher = d;
+         }
+         return dispatcher;
+      }
+   }
+
+   private static UDPResponseDispatcher open() throws IOException
+   {
+      DatagramChannel channel = openChannel();
+      Selector selector;
+      try
+      {
+         selector = Selector.open();
+         channel.register(selector, SelectionKey.OP_READ);
+      }
+      catch (IOException e)
+      {
+         channel.close();
+         throw e;
+      }
+      UDPResponseDispatcher dispatcher = new UDPResponseDispatcher(selector, channel);
+      Thread t = new Thread(dispatcher, "udp-response-dispatcher-" + channel.socket().getLocalPort());
+      t.setDaemon(true);
+      t.start();
+      return dispatcher;
+   }
+
+   /**
+    * Opens a non-blocking datagram channel bound to an ephemeral port
+    */
+   static DatagramChannel openChannel() throws IOException
+   {
+      DatagramChannel channel = DatagramChannel.open();
+      try
+      {
+         channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+         channel.setOption(StandardSocketOptions.SO_RCVBUF, ByteBufferPool.BUFFER_SIZE);
+         channel.setOption(StandardSocketOptions.SO_SNDBUF, ByteBufferPool.BUFFER_SIZE);
+         channel.bind(null);
+         channel.configureBlocking(false);
+      }
+      catch (IOException e)
+      {
+         channel.close();
+         throw e;
+      }
+      return channel;
+   }
+
+   /**
+    * Registers a request whose responses are going to be received on the shared
+    * channel; this is to be done before sending the request, to make sure no
+    * response is lost.
+    * 
+    * @param messageId   the request WS-Addressing MessageID
+    * @param handler     the response handler
+    * @param multi       whether multiple responses are expected
+    * @param timeout     the timeout in milliseconds, or 0 for no timeout
+    * @return the registration
+    */
+   Registration register(String messageId, ResponseHandler handler, boolean multi, long timeout)
+   {
+      Registration reg = new Registration(messageId, null, handler, multi);
+      pending.put(messageId, reg);
+      added(reg, timeout);
+      return reg;
+   }
+
+   /**
+    * Registers a request whose responses are going to be received on the provided
+    * dedicated channel, which is closed when the registration completes.
+    * 
+    * @param dedicated   the non-blocking channel the request is sent through
+    * @param handler     the response handler
+    * @param multi       whether multiple responses are expected
+    * @param timeout     the timeout in milliseconds, or 0 for no timeout
+    * @return the registration
+    */
+   Registration register(final DatagramChannel dedicated, ResponseHandler handler, boolean multi, long timeout)
+   {
+      final Registration reg = new Registration(null, dedicated, handler, multi);
+      execute(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               dedicated.register(selector, SelectionKey.OP_READ, reg);
+            }
+            catch (ClosedChannelException e)
+            {
+               complete(reg);
+            }
+         }
+      });
+      added(reg, timeout);
+      return reg;
+   }
+
+   /**
+    * Completes the provided registration without notifying its handler
+    */
+   void cancel(Registration reg)
+   {
+      complete(reg);
+   }
+
+   void send(byte[] data, int length, SocketAddress target) throws IOException
+   {
+      if (channel.send(ByteBuffer.wrap(data, 0, length), target) == 0)
+      {
+         LOG.log(Level.FINE, "Datagram to " + target + " dropped, no room in the socket send buffer");
+      }
+   }
+
+   void close()
+   {
+      closed = true;
+      selector.wakeup();
+   }
+
+   boolean isClosed()
+   {
+      return closed;
+   }
+
+   public void run()
+   {
+      try
+      {
+         while (!closed)
+         {
+            selector.select(timers.nextDelay(System.currentTimeMillis()));
+            Runnable task;
+            while ((task = tasks.poll()) != null)
+            {
+               task.run();
+            }
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext())
+            {
+               SelectionKey key = it.next();
+               it.remove();
+               if (key.isValid() && key.isReadable())
+               {
+                  read(key);
+               }
+            }
+            List<Runnable> expired = timers.advance(System.currentTimeMillis());
+            if (expired != null)
+            {
+               for (Runnable r : expired)
+               {
+                  r.run();
+               }
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.log(Level.SEVERE, e.toString());
+      }
+      finally
+      {
+         shutdown();
+      }
+   }
+
+   private void read(SelectionKey key)
+   {
+      final DatagramChannel ch = (DatagramChannel) key.channel();
+      final Registration attached = (Registration) key.attachment();
+      while (true)
+      {
+         buffer.clear();
+         try
+         {
+            if (ch.receive(buffer) == null)
+            {
+               return;
+            }
+         }
+         catch (IOException e)
+         {
+            if (ch.isOpen()) {
+               LOG.log(Level.SEVERE, e.toString());
+            }
+            return;
+         }
+         buffer.flip();
+         byte[] data = new byte[buffer.remaining()];
+         buffer.get(data);
+         Registration reg = attached;
+         if (reg == null)
+         {
+            String relatesTo = getRelatesTo(data);
+            reg = relatesTo != null ? pending.get(relatesTo) : null;
+         }
+         if (reg == null || reg.done.get())
+         {
+            LOG.log(Level.FINE, "Discarding UDP response not related to any pending request");
+         }
+         else if (reg.multi)
+         {
+            reg.handler.responseReceived(data);
+         }
+         else if (complete(reg))
+         {
+            reg.handler.responseReceived(data);
+         }
+         if (!ch.isOpen())
+         {
+            return;
+         }
+      }
+   }
+
+   private void execute(Runnable task)
+   {
+      tasks.add(task);
+      selector.wakeup();
+   }
+
+   private void added(Registration reg, long timeout)
+   {
+      registrations.add(reg);
+      if (closed)
+      {
+         //the dispatcher might have been shut down before the registration was added
+         if (complete(reg))
+         {
+            reg.handler.timedOut();
+         }
+         return;
+      }
+      schedule(reg, timeout);
+   }
+
+   private void schedule(final Registration reg, final long timeout)
+   {
+      if (timeout <= 0)
+      {
+         return;
+      }
+      execute(new Runnable()
+      {
+         public void run()
+         {
+            if (!reg.done.get())
+            {
+               reg.timeout = timers.schedule(new Runnable()
+               {
+                  public void run()
+                  {
+                     if (complete(reg))
+                     {
+                        reg.handler.timedOut();
+                     }
+                  }
+               }, timeout, System.currentTimeMillis());
+            }
+         }
+      });
+   }
+
+   private boolean complete(Registration reg)
+   {
+      if (!reg.done.compareAndSet(false, true))
+      {
+         return false;
+      }
+      registrations.remove(reg);
+      if (reg.messageId != null)
+      {
+         pending.remove(reg.messageId, reg);
+      }
+      else
+      {
+         try
+         {
+            reg.dedicated.close();
+         }
+         catch (IOException e)
+         {
+            LOG.log(Level.FINEST, e.getMessage(), e);
+         }
+      }
+      TimerWheel.Timeout t = reg.timeout;
+      if (t != null)
+      {
+         t.cancel();
+      }
+      return true;
+   }
+
+   private void shutdown()
+   {
+      closed = true;
+      try
+      {
+         selector.close();
+      }
+      catch (IOException e)
+      {
+         LOG.log(Level.FINEST, e.getMessage(), e);
+      }
+      try
+      {
+         channel.close();
+      }
+      catch (IOException e)
+      {
+         LOG.log(Level.FINEST, e.getMessage(), e);
+      }
+      for (Registration reg : new ArrayList<Registration>(registrations))
+      {
+         if (complete(reg))
+         {
+            reg.handler.timedOut();
+         }
+      }
+   }
+
+   /**
+    * Gets the value of the WS-Addressing RelatesTo header of the provided SOAP message;
+    * parsing stops at the SOAP Body.
+    */
+   static String getRelatesTo(byte[] data)
+   {
+      XMLStreamReader reader = null;
+      try
+      {
+         reader = StaxUtils.createXMLStreamReader(new ByteArrayInputStream(data));
+         while (reader.hasNext())
+         {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT)
+            {
+               final String ns = reader.getNamespaceURI();
+               final String localName = reader.getLocalName();
+               if ("RelatesTo".equals(localName) && (Names.WSA_NAMESPACE_NAME.equals(ns) || WSA_200408_NAMESPACE_NAME.equals(ns)))
+               {
+                  return reader.getElementText().trim();
+               }
+               if ("Body".equals(localName) && (SOAP11_NAMESPACE.equals(ns) || SOAP12_NAMESPACE.equals(ns)))
+               {
+                  return null;
+               }
+            }
+         }
+      }
+      catch (XMLStreamException e)
+      {
+         LOG.log(Level.FINEST, e.getMessage(), e);
+      }
+      catch (RuntimeException e)
+      {
+         LOG.log(Level.FINEST, e.getMessage(), e);
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            try
+            {
+               reader.close();
+            }
+            catch (XMLStreamException e)
+            {
+               //ignore
+            }
+         }
+      }
+      return null;
+   }
+
+   static final class Registration
+   {
+      private final String messageId;
+
+      private final DatagramChannel dedicated;
+
+      private final ResponseHandler handler;
+
+      private final boolean multi;
+
+      private final AtomicBoolean done = new AtomicBoolean();
+
+      private volatile TimerWheel.Timeout timeout;
+
+      private Registration(String messageId, DatagramChannel dedicated, ResponseHandler handler, boolean multi)
+      {
+         this.messageId = messageId;
+         this.dedicated = dedicated;
+         this.handler = handler;
+         this.multi = multi;
+      }
+   }
+}
@@ -27,6 +27,7 @@ import static org.jboss.logging.Logger.Level.INFO;
 import static org.jboss.logging.Logger.Level.TRACE;
 import static org.jboss.logging.Logger.Level.WARN;
 
+import java.io.File;
 import java.net.URL;
 
 import javax.xml.namespace.QName;
@@ -249,4 +250,20 @@ public interface Loggers extends BasicLogger
     @LogMessage(level = ERROR)
     @Message(id = 24110, value = "Unable to process handler element: %s")
     void unableToProcessHandlerElement(Element el, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 24111, value = "Virtual threads are not available in the current JVM, endpoint invocations are going to be performed on the container threads")
+    void virtualThreadsNotAvailable();
+
+    @LogMessage(level = ERROR)
+    @Message(id = 24113, value = "Service %s, cannot publish wsdl to: %s")
+    void cannotPublishWSDLTo(QName serviceName, File file, @Cause Throwable cause);
+
+    @LogMessage(level = WARN)
+    @Message(id = 24114, value = "Nonce store %s is full, rejecting nonce; the store capacity should be increased")
+    void nonceStoreFull(String store);
+
+    @LogMessage(level = WARN)
+    @Message(id = 24115, value = "The async HTTP conduit has been requested, but the HTTP conduit factory is %s (the Apache HttpAsyncClient based transport might be missing); default conduits are going to be used.")
+    void asyncHTTPConduitFactoryNotAvailable(String factory);
 }
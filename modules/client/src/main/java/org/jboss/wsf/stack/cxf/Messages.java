@@ -223,4 +223,7 @@ public interface Messages {
 
     @Message(id = 24109, value = "Could not get WSDL contract for endpoint %s at %s")
     WSFException couldNotFetchWSDLContract(String endpoint, String wsdlLocation);
+
+    @Message(id = 24112, value = "Port pool for %s has been closed")
+    IllegalStateException portPoolClosed(String sei);
 }
@@ -123,7 +123,7 @@ public class ClientBusSelector
    }
    
    public Bus createNewBus() {
-      return new JBossWSBusFactory().createBus();
+      return JBossWSBusFactory.newClientBus();
    }
    
    public static String getDefaultStrategy() {
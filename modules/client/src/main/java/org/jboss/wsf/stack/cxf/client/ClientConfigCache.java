@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.client;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jboss.wsf.spi.metadata.config.ClientConfig;
+import org.jboss.wsf.spi.metadata.config.ConfigMetaDataParser;
+import org.jboss.wsf.spi.metadata.config.ConfigRoot;
+
+/**
+ * A cache of the client configurations parsed from the META-INF/jaxws-client-config.xml
+ * resource visible to the SEI classes, keyed by the SEI classloader. Classloaders are
+ * weakly referenced, so that they can be garbage collected (e.g. on undeploy).
+ * The configurations coming from the server config are not cached here, hence
+ * changes to them are immediately visible.
+ */
+final class ClientConfigCache
+{
+   private static final Map<ClassLoader, Holder> cache = new WeakHashMap<ClassLoader, Holder>();
+
+   private ClientConfigCache()
+   {
+      //NOOP
+   }
+
+   /**
+    * Gets the parsed client configuration resource visible to the provided SEI class
+    *
+    * @param seiClass   the SEI class
+    * @return the parsed configuration or null if no configuration resource is available
+    * @throws Exception
+    */
+   static ConfigRoot getConfigRoot(Class<?> seiClass) throws Exception
+   {
+      final ClassLoader cl = seiClass.getClassLoader();
+      if (cl == null)
+      {
+         return parse(seiClass);
+      }
+      Holder holder;
+      synchronized (cache)
+      {
+         holder = cache.get(cl);
+      }
+      if (holder == null)
+      {
+         //concurrent first lookups might parse the resource more than once, which is harmless
+         holder = new Holder(parse(seiClass));
+         synchronized (cache)
+         {
+            cache.put(cl, holder);
+         }
+      }
+      return holder.root;
+   }
+
+   private static ConfigRoot parse(Class<?> seiClass) throws Exception
+   {
+      final InputStream is = seiClass.getResourceAsStream("/" + ClientConfig.DEFAULT_CLIENT_CONFIG_FILE);
+      if (is == null)
+      {
+         return null;
+      }
+      try
+      {
+         return ConfigMetaDataParser.parse(is);
+      }
+      finally
+      {
+         is.close();
+      }
+   }
+
+   private static final class Holder
+   {
+      private final ConfigRoot root;
+
+      Holder(ConfigRoot root)
+      {
+         this.root = root;
+      }
+   }
+}
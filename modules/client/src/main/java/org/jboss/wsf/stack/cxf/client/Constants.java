@@ -47,11 +47,26 @@ public class Constants
    public static final String CXF_WS_DISCOVERY_ENABLED = "cxf.ws-discovery.enabled";
    public static final String JBWS_CXF_DISABLE_HANDLER_AUTH_CHECKS = "org.jboss.ws.cxf.disableHandlerAuthChecks";
    public static final String JBWS_CXF_NO_LOCAL_BC = "org.jboss.ws.cxf.noLocalBC";
+   public static final String JBWS_CXF_SUBJECT_CACHE_ENABLED = "org.jboss.ws.cxf.subjectCache.enabled";
+   public static final String JBWS_CXF_SUBJECT_CACHE_MAX_SIZE = "org.jboss.ws.cxf.subjectCache.maxSize";
+   public static final String JBWS_CXF_SUBJECT_CACHE_TTL = "org.jboss.ws.cxf.subjectCache.timeToLive";
+   public static final String JBWS_CXF_VIRTUAL_THREADS_ENABLED = "org.jboss.ws.cxf.virtualThreads.enabled";
+   public static final String JBWS_CXF_PARALLEL_PUBLISH_ENABLED = "org.jboss.ws.cxf.parallelPublish.enabled";
+   public static final String JBWS_CXF_PARALLEL_PUBLISH_PARALLELISM = "org.jboss.ws.cxf.parallelPublish.parallelism";
+   public static final String JBWS_CXF_WSDL_DEFINITION_CACHE_ENABLED = "org.jboss.ws.cxf.wsdlDefinitionCache.enabled";
+   public static final String JBWS_CXF_ASYNC_WSDL_PUBLISH_ENABLED = "org.jboss.ws.cxf.asyncWsdlPublish.enabled";
    public static final String CXF_CLIENT_ALLOW_CHUNKING = "cxf.client.allowChunking";
    public static final String CXF_CLIENT_CHUNKING_THRESHOLD = "cxf.client.chunkingThreshold";
    public static final String CXF_CLIENT_CONNECTION_TIMEOUT = "cxf.client.connectionTimeout";
    public static final String CXF_CLIENT_RECEIVE_TIMEOUT = "cxf.client.receiveTimeout";
    public static final String CXF_CLIENT_CONNECTION = "cxf.client.connection";
+   public static final String CXF_CLIENT_CONDUIT = "cxf.client.conduit";
+   public static final String CXF_CLIENT_CONDUIT_ASYNC = "async";
+   public static final String CXF_CLIENT_CONDUIT_URLCONNECTION = "urlconnection";
+   public static final String CXF_CLIENT_ASYNC_MAX_CONNECTIONS = "cxf.client.async.maxConnections";
+   public static final String CXF_CLIENT_ASYNC_MAX_PER_HOST_CONNECTIONS = "cxf.client.async.maxPerHostConnections";
+   public static final String CXF_CLIENT_ASYNC_CONNECTION_MAX_IDLE = "cxf.client.async.connectionMaxIdle";
+   public static final String CXF_CLIENT_ASYNC_CONNECTION_TTL = "cxf.client.async.connectionTTL";
    public static final String CXF_TLS_CLIENT_DISABLE_CN_CHECK = "cxf.tls-client.disableCNCheck";
    
    public static final String JBWS_CXF_JAXWS_CLIENT_BUS_STRATEGY = "org.jboss.ws.cxf.jaxws-client.bus.strategy";
@@ -59,6 +74,7 @@ public class Constants
    public static final String NEW_BUS_STRATEGY = "NEW_BUS";
    public static final String TCCL_BUS_STRATEGY = "TCCL_BUS";
    public static final String JBWS_CXF_JAXWS_CLIENT_BUS_SELECTOR = "org.jboss.ws.cxf.jaxws-client.bus.selector";
+   public static final String JBWS_CXF_JAXWS_CLIENT_BUS_SPARE = "org.jboss.ws.cxf.jaxws-client.bus.spare";
    public static final String JBWS_CXF_DISABLE_DEPLOYMENT_USER_DEFAULT_THREAD_BUS = "org.jboss.ws.cxf.disable-deployment-user-default-thread-bus";
    public static final String JBWS_CXF_DISABLE_SCHEMA_CACHE = "org.jboss.ws.cxf.disableSchemaCache";
 }
@@ -0,0 +1,317 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.client;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Service;
+import javax.xml.ws.WebServiceFeature;
+
+import org.apache.cxf.frontend.ClientProxy;
+import org.jboss.wsf.stack.cxf.Messages;
+
+/**
+ * A pool of JAX-WS ports for a given SEI, allowing concurrent callers to use
+ * already configured proxies without sharing them (ports are not thread-safe when
+ * it comes to request context changes) and without paying the port creation cost
+ * (contract processing, client config and handlers setup) on each call.
+ * 
+ * Ports are checked out for exclusive use and checked back in when done; the request
+ * context of a returned port is restored to the one the port had when created. Up to
+ * maxSize ports are created, checkouts block when all of them are in use. Idle ports
+ * not used for longer than the max idle time are destroyed.
+ * 
+ * <pre>
+ * T port = pool.checkout();
+ * try {
+ *    port.doSomething();
+ * } finally {
+ *    pool.checkin(port);
+ * }
+ * </pre>
+ */
+public final class PortPool<T>
+{
+   private final Service service;
+   private final QName portName;
+   private final Class<T> sei;
+   private final WebServiceFeature[] features;
+   private final long maxIdleNanos;
+   private final Semaphore permits;
+   private final int maxSize;
+   //most recently returned ports first
+   private final ConcurrentLinkedDeque<PooledPort<T>> idle = new ConcurrentLinkedDeque<PooledPort<T>>();
+   private final Map<T, PooledPort<T>> all = new IdentityHashMap<T, PooledPort<T>>();
+   private final LongAdder checkouts = new LongAdder();
+   private final LongAdder created = new LongAdder();
+   private final LongAdder evicted = new LongAdder();
+   private volatile boolean closed;
+
+   /**
+    * @param service       the service to create ports from
+    * @param portName      the port name, can be null
+    * @param sei           the service endpoint interface
+    * @param initialSize   the number of ports to create immediately
+    * @param maxSize       the max number of ports in the pool
+    * @param maxIdleTime   the time after which an unused port is destroyed, in milliseconds (0 for no eviction)
+    * @param features      the features to create the ports with
+    */
+   public PortPool(Service service, QName portName, Class<T> sei, int initialSize, int maxSize, long maxIdleTime,
+         WebServiceFeature... features)
+   {
+      if (service == null || sei == null || maxSize < 1 || initialSize > maxSize || maxIdleTime < 0)
+      {
+         throw new IllegalArgumentException();
+      }
+      this.service = service;
+      this.portName = portName;
+      this.sei = sei;
+      this.features = features;
+      this.maxSize = maxSize;
+      this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTime);
+      this.permits = new Semaphore(maxSize, true);
+      for (int i = 0; i < initialSize; i++)
+      {
+         idle.offerLast(createPort());
+      }
+   }
+
+   public PortPool(Service service, Class<T> sei, int maxSize)
+   {
+      this(service, null, sei, 0, maxSize, 0);
+   }
+
+   /**
+    * Gets a port for exclusive use, waiting for one to be returned if all of them are in use
+    * 
+    * @return the port
+    * @throws InterruptedException
+    */
+   public T checkout() throws InterruptedException
+   {
+      ensureOpen();
+      permits.acquire();
+      return doCheckout();
+   }
+
+   /**
+    * Gets a port for exclusive use, waiting up to the specified time if all of them are in use
+    * 
+    * @param timeout   the max time to wait
+    * @param unit      the timeout unit
+    * @return the port or null if none became available before the timeout
+    * @throws InterruptedException
+    */
+   public T checkout(long timeout, TimeUnit unit) throws InterruptedException
+   {
+      ensureOpen();
+      if (!permits.tryAcquire(timeout, unit))
+      {
+         return null;
+      }
+      return doCheckout();
+   }
+
+   private T doCheckout()
+   {
+      try
+      {
+         evictIdlePorts();
+         PooledPort<T> pp = idle.pollFirst();
+         if (pp == null)
+         {
+            pp = createPort();
+         }
+         pp.checkedOut.set(true);
+         checkouts.increment();
+         return pp.port;
+      }
+      catch (RuntimeException e)
+      {
+         permits.release();
+         throw e;
+      }
+   }
+
+   /**
+    * Returns a port previously obtained through checkout; the port must not be used afterwards.
+    * 
+    * @param port   the port
+    * @throws IllegalArgumentException if the port is not currently checked out from this pool
+    */
+   public void checkin(T port)
+   {
+      final PooledPort<T> pp;
+      synchronized (all)
+      {
+         pp = all.get(port);
+      }
+      if (pp == null || !pp.checkedOut.compareAndSet(true, false))
+      {
+         throw new IllegalArgumentException();
+      }
+      if (closed)
+      {
+         destroy(pp);
+      }
+      else
+      {
+         pp.reset();
+         idle.offerFirst(pp);
+         //the pool might have been closed (and the idle ports drained) in the meantime
+         if (closed && idle.removeFirstOccurrence(pp))
+         {
+            destroy(pp);
+         }
+      }
+      permits.release();
+   }
+
+   /**
+    * Closes the pool, destroying the idle ports; the ports currently in use are destroyed when checked in.
+    */
+   public void close()
+   {
+      closed = true;
+      PooledPort<T> pp;
+      while ((pp = idle.pollFirst()) != null)
+      {
+         destroy(pp);
+      }
+   }
+
+   private PooledPort<T> createPort()
+   {
+      final T port = portName != null ? service.getPort(portName, sei, features) : service.getPort(sei, features);
+      final PooledPort<T> pp = new PooledPort<T>(port);
+      synchronized (all)
+      {
+         all.put(port, pp);
+      }
+      created.increment();
+      return pp;
+   }
+
+   private void evictIdlePorts()
+   {
+      if (maxIdleNanos > 0)
+      {
+         final long now = System.nanoTime();
+         //oldest ports are at the end of the deque
+         for (Iterator<PooledPort<T>> it = idle.descendingIterator(); it.hasNext();)
+         {
+            final PooledPort<T> pp = it.next();
+            if (now - pp.lastUsed <= maxIdleNanos)
+            {
+               break;
+            }
+            if (idle.removeLastOccurrence(pp))
+            {
+               destroy(pp);
+               evicted.increment();
+            }
+         }
+      }
+   }
+
+   private void destroy(PooledPort<T> pp)
+   {
+      synchronized (all)
+      {
+         all.remove(pp.port);
+      }
+      ClientProxy.getClient(pp.port).destroy();
+   }
+
+   private void ensureOpen()
+   {
+      if (closed)
+      {
+         throw Messages.MESSAGES.portPoolClosed(sei.getName());
+      }
+   }
+
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   /**
+    * @return the number of ports currently checked out
+    */
+   public int getActiveCount()
+   {
+      return maxSize - permits.availablePermits();
+   }
+
+   public int getIdleCount()
+   {
+      return idle.size();
+   }
+
+   public long getCheckoutCount()
+   {
+      return checkouts.sum();
+   }
+
+   public long getCreatedCount()
+   {
+      return created.sum();
+   }
+
+   public long getEvictedCount()
+   {
+      return evicted.sum();
+   }
+
+   private static final class PooledPort<T>
+   {
+      private final T port;
+      private final Map<String, Object> initialRequestContext;
+      private final AtomicBoolean checkedOut = new AtomicBoolean();
+      private volatile long lastUsed = System.nanoTime();
+
+      PooledPort(T port)
+      {
+         this.port = port;
+         this.initialRequestContext = new HashMap<String, Object>(((BindingProvider) port).getRequestContext());
+      }
+
+      void reset()
+      {
+         final Map<String, Object> rc = ((BindingProvider) port).getRequestContext();
+         rc.clear();
+         rc.putAll(initialRequestContext);
+         lastUsed = System.nanoTime();
+      }
+   }
+}
@@ -29,8 +29,6 @@ import static org.jboss.wsf.stack.cxf.client.Constants.THREAD_BUS_STRATEGY;
 import static org.jboss.wsf.stack.cxf.client.SecurityActions.getContextClassLoader;
 import static org.jboss.wsf.stack.cxf.client.SecurityActions.setContextClassLoader;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -67,7 +65,6 @@ import org.jboss.ws.common.utils.DelegateClassLoader;
 import org.jboss.wsf.spi.classloading.ClassLoaderProvider;
 import org.jboss.wsf.spi.management.ServerConfig;
 import org.jboss.wsf.spi.metadata.config.ClientConfig;
-import org.jboss.wsf.spi.metadata.config.ConfigMetaDataParser;
 import org.jboss.wsf.spi.metadata.config.ConfigRoot;
 import org.jboss.wsf.stack.cxf.Loggers;
 import org.jboss.wsf.stack.cxf.Messages;
@@ -75,7 +72,6 @@ import org.jboss.wsf.stack.cxf.client.configuration.CXFClientConfigurer;
 import org.jboss.wsf.stack.cxf.client.configuration.HandlerChainSortInterceptor;
 import org.jboss.wsf.stack.cxf.client.configuration.JBossWSBusFactory;
 import org.w3c.dom.Element;
-import org.jboss.logging.Logger;
 
 /**
  * A custom javax.xml.ws.spi.Provider implementation
@@ -625,32 +621,18 @@ public class ProviderImpl extends org.apache.cxf.jaxws22.spi.ProviderImpl
             configName = null;
          } else {
             configName = seiClass.getName();
-            InputStream is = null;
             try
             {
-               is = seiClass.getResourceAsStream("/" + ClientConfig.DEFAULT_CLIENT_CONFIG_FILE);
-               if (is != null) {
-                  ConfigRoot config = ConfigMetaDataParser.parse(is);
-                  ClientConfig cc = config != null ? config.getClientConfigByName(configName) : null;
-                  if (cc != null) {
-                     return cc;
-                  }
+               ConfigRoot config = ClientConfigCache.getConfigRoot(seiClass);
+               ClientConfig cc = config != null ? config.getClientConfigByName(configName) : null;
+               if (cc != null) {
+                  return cc;
                }
             }
             catch (Exception e)
             {
                throw MESSAGES.couldNotReadConfiguration(ClientConfig.DEFAULT_CLIENT_CONFIG_FILE, e);
             }
-            finally
-            {
-               if (is != null) {
-                  try {
-                     is.close();
-                  } catch (IOException e) {
-                     Logger.getLogger(ProviderImpl.class).trace(e);
-                  } //ignore
-               }
-            }
          }
          if (ClassLoaderProvider.isSet()) { //optimization for avoiding checking for a server config when we know for sure we're out-of-container
             ServerConfig sc = getServerConfig();
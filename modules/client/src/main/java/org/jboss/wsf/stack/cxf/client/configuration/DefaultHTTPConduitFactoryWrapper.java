@@ -34,15 +34,24 @@ import org.apache.cxf.transport.http.HTTPConduit;
 import org.apache.cxf.transport.http.HTTPConduitFactory;
 import org.apache.cxf.transport.http.HTTPTransportFactory;
 import org.apache.cxf.transport.http.URLConnectionHTTPConduit;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduitFactory;
 import org.apache.cxf.transports.http.configuration.ConnectionType;
 import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
 import org.apache.cxf.ws.addressing.EndpointReferenceType;
+import org.jboss.wsf.stack.cxf.Loggers;
 import org.jboss.wsf.stack.cxf.client.Constants;
 
 /**
  * The default wrapper of HTTPConduitFactory, which gets default configuration values from a
  * map. The configuration map can also be populated by system properties.
  * 
+ * The conduit backend can be selected using the cxf.client.conduit property:
+ * - urlconnection: the JDK HttpURLConnection based conduit is always used
+ * - async: the Apache HttpAsyncClient based conduit is used for every request (and not only for
+ *   asynchronous ones); the connections are pooled in the bus-wide AsyncHTTPConduitFactory, whose
+ *   limits can be set with the cxf.client.async.* properties
+ * When no backend is selected, conduits are created by the wrapped factory as usual.
+ * 
  * @author alessio.soldano@jboss.com
  * @since 1-Apr-2015
  */
@@ -57,10 +66,17 @@ public final class DefaultHTTPConduitFactoryWrapper extends AbstractHTTPConduitF
       map.put(Constants.CXF_CLIENT_CONNECTION_TIMEOUT, SecurityActions.getLong(Constants.CXF_CLIENT_CONNECTION_TIMEOUT, null));
       map.put(Constants.CXF_CLIENT_RECEIVE_TIMEOUT, SecurityActions.getLong(Constants.CXF_CLIENT_RECEIVE_TIMEOUT, null));
       map.put(Constants.CXF_CLIENT_CONNECTION, SecurityActions.getSystemProperty(Constants.CXF_CLIENT_CONNECTION, null));
+      map.put(Constants.CXF_CLIENT_CONDUIT, SecurityActions.getSystemProperty(Constants.CXF_CLIENT_CONDUIT, null));
+      map.put(Constants.CXF_CLIENT_ASYNC_MAX_CONNECTIONS, SecurityActions.getInteger(Constants.CXF_CLIENT_ASYNC_MAX_CONNECTIONS, null));
+      map.put(Constants.CXF_CLIENT_ASYNC_MAX_PER_HOST_CONNECTIONS, SecurityActions.getInteger(Constants.CXF_CLIENT_ASYNC_MAX_PER_HOST_CONNECTIONS, null));
+      map.put(Constants.CXF_CLIENT_ASYNC_CONNECTION_MAX_IDLE, SecurityActions.getLong(Constants.CXF_CLIENT_ASYNC_CONNECTION_MAX_IDLE, null));
+      map.put(Constants.CXF_CLIENT_ASYNC_CONNECTION_TTL, SecurityActions.getLong(Constants.CXF_CLIENT_ASYNC_CONNECTION_TTL, null));
       defaultConfiguration = Collections.unmodifiableMap(map);
    }
    
    private final Map<String, Object> configuration;
+   private volatile boolean asyncFactoryConfigured;
+   private volatile ConduitTemplate template;
    
    public DefaultHTTPConduitFactoryWrapper(HTTPConduitFactory delegate)
    {
@@ -89,6 +105,59 @@ public final class DefaultHTTPConduitFactoryWrapper extends AbstractHTTPConduitF
       }
    }
 
+   @Override
+   public HTTPConduit createConduit(HTTPTransportFactory f, Bus b, EndpointInfo localInfo, EndpointReferenceType target)
+         throws IOException
+   {
+      final String conduitType = (String)configuration.get(Constants.CXF_CLIENT_CONDUIT);
+      if (Constants.CXF_CLIENT_CONDUIT_URLCONNECTION.equalsIgnoreCase(conduitType))
+      {
+         HTTPConduit conduit = createNewConduit(f, b, localInfo, target);
+         configureConduit(conduit);
+         return conduit;
+      }
+      if (Constants.CXF_CLIENT_CONDUIT_ASYNC.equalsIgnoreCase(conduitType) && !asyncFactoryConfigured)
+      {
+         configureAsyncConduitFactory(b);
+      }
+      return super.createConduit(f, b, localInfo, target);
+   }
+
+   /**
+    * Sets the policy and connection pool limits of the wrapped AsyncHTTPConduitFactory, if any
+    * (a warning is logged otherwise); the bus properties are used for the values not provided
+    * in the configuration map.
+    */
+   private synchronized void configureAsyncConduitFactory(Bus b)
+   {
+      if (!asyncFactoryConfigured)
+      {
+         if (getDelegate() instanceof AsyncHTTPConduitFactory)
+         {
+            Map<String, Object> props = new HashMap<String, Object>(b.getProperties());
+            props.put(AsyncHTTPConduitFactory.USE_POLICY, AsyncHTTPConduitFactory.UseAsyncPolicy.ALWAYS);
+            putIfNotNull(props, AsyncHTTPConduitFactory.MAX_CONNECTIONS, configuration.get(Constants.CXF_CLIENT_ASYNC_MAX_CONNECTIONS));
+            putIfNotNull(props, AsyncHTTPConduitFactory.MAX_PER_HOST_CONNECTIONS, configuration.get(Constants.CXF_CLIENT_ASYNC_MAX_PER_HOST_CONNECTIONS));
+            putIfNotNull(props, AsyncHTTPConduitFactory.CONNECTION_MAX_IDLE, configuration.get(Constants.CXF_CLIENT_ASYNC_CONNECTION_MAX_IDLE));
+            putIfNotNull(props, AsyncHTTPConduitFactory.CONNECTION_TTL, configuration.get(Constants.CXF_CLIENT_ASYNC_CONNECTION_TTL));
+            ((AsyncHTTPConduitFactory)getDelegate()).update(props);
+         }
+         else
+         {
+            Loggers.ROOT_LOGGER.asyncHTTPConduitFactoryNotAvailable(String.valueOf(getDelegate()));
+         }
+         asyncFactoryConfigured = true;
+      }
+   }
+
+   private static void putIfNotNull(Map<String, Object> map, String key, Object value)
+   {
+      if (value != null)
+      {
+         map.put(key, value);
+      }
+   }
+
    protected HTTPConduit createNewConduit(HTTPTransportFactory f, Bus b, EndpointInfo localInfo,
          EndpointReferenceType target) throws IOException
    {
@@ -97,66 +166,89 @@ public final class DefaultHTTPConduitFactoryWrapper extends AbstractHTTPConduitF
 
    protected void configureConduit(HTTPConduit conduit)
    {
-      configureTLSClient(conduit);
-      configureHTTPClientPolicy(conduit);
-   }
-   
-   private void configureTLSClient(HTTPConduit conduit)
-   {
-      TLSClientParameters parameters = conduit.getTlsClientParameters();
-      if (parameters == null) //don't do anything when user already provided a configuration
+      ConduitTemplate t = template;
+      if (t == null)
       {
-         parameters = new TLSClientParameters();
-         parameters.setUseHttpsURLConnectionDefaultSslSocketFactory(true);
-         if (Boolean.TRUE.equals((Boolean)configuration.get(Constants.CXF_TLS_CLIENT_DISABLE_CN_CHECK))) {
-            parameters.setDisableCNCheck(true);
-         }
-         conduit.setTlsClientParameters(parameters);
+         t = new ConduitTemplate(configuration);
+         template = t;
       }
+      t.configureTLSClient(conduit);
+      t.configureHTTPClientPolicy(conduit);
    }
    
-   private void configureHTTPClientPolicy(HTTPConduit conduit)
+   /**
+    * The default conduit settings, parsed once from the configuration map when the first conduit
+    * is configured. Each conduit still gets its own TLSClientParameters and HTTPClientPolicy copies,
+    * as those are commonly modified by users on the conduit of a given port.
+    */
+   private static final class ConduitTemplate
    {
-      boolean set = false;
-
-      final Boolean allowChunking = (Boolean)configuration.get(Constants.CXF_CLIENT_ALLOW_CHUNKING);
-      set = set || (allowChunking != null);
-      final Integer chunkingThreshold = (Integer)configuration.get(Constants.CXF_CLIENT_CHUNKING_THRESHOLD);
-      set = set || (chunkingThreshold != null);
-      final Long connectionTimeout = (Long)configuration.get(Constants.CXF_CLIENT_CONNECTION_TIMEOUT);
-      set = set || (connectionTimeout != null);
-      final Long receiveTimeout = (Long)configuration.get(Constants.CXF_CLIENT_RECEIVE_TIMEOUT);
-      set = set || (receiveTimeout != null);
-      final String connection = (String)configuration.get(Constants.CXF_CLIENT_CONNECTION);
-      set = set || (connection != null);
-
-      if (set)
+      private final boolean disableCNCheck;
+      private final boolean setClientPolicy;
+      private final Boolean allowChunking;
+      private final Integer chunkingThreshold;
+      private final Long connectionTimeout;
+      private final Long receiveTimeout;
+      private final ConnectionType connection;
+      
+      ConduitTemplate(Map<String, Object> configuration)
       {
-         HTTPClientPolicy httpClientPolicy = conduit.getClient();
-         if (httpClientPolicy == null)
-         {
-            httpClientPolicy = new HTTPClientPolicy();
-            conduit.setClient(httpClientPolicy);
-         }
-         if (allowChunking != null)
-         {
-            httpClientPolicy.setAllowChunking(allowChunking);
-         }
-         if (chunkingThreshold != null)
-         {
-            httpClientPolicy.setChunkingThreshold(chunkingThreshold);
-         }
-         if (connectionTimeout != null)
-         {
-            httpClientPolicy.setConnectionTimeout(connectionTimeout);
-         }
-         if (receiveTimeout != null)
+         disableCNCheck = Boolean.TRUE.equals((Boolean)configuration.get(Constants.CXF_TLS_CLIENT_DISABLE_CN_CHECK));
+         allowChunking = (Boolean)configuration.get(Constants.CXF_CLIENT_ALLOW_CHUNKING);
+         chunkingThreshold = (Integer)configuration.get(Constants.CXF_CLIENT_CHUNKING_THRESHOLD);
+         connectionTimeout = (Long)configuration.get(Constants.CXF_CLIENT_CONNECTION_TIMEOUT);
+         receiveTimeout = (Long)configuration.get(Constants.CXF_CLIENT_RECEIVE_TIMEOUT);
+         final String c = (String)configuration.get(Constants.CXF_CLIENT_CONNECTION);
+         connection = (c != null) ? ConnectionType.fromValue(c) : null;
+         setClientPolicy = allowChunking != null || chunkingThreshold != null || connectionTimeout != null
+               || receiveTimeout != null || connection != null;
+      }
+      
+      void configureTLSClient(HTTPConduit conduit)
+      {
+         TLSClientParameters parameters = conduit.getTlsClientParameters();
+         if (parameters == null) //don't do anything when user already provided a configuration
          {
-            httpClientPolicy.setReceiveTimeout(receiveTimeout);
+            parameters = new TLSClientParameters();
+            //the JDK default socket factory is shared, so is its SSL session cache
+            parameters.setUseHttpsURLConnectionDefaultSslSocketFactory(true);
+            if (disableCNCheck) {
+               parameters.setDisableCNCheck(true);
+            }
+            conduit.setTlsClientParameters(parameters);
          }
-         if (connection != null)
+      }
+      
+      void configureHTTPClientPolicy(HTTPConduit conduit)
+      {
+         if (setClientPolicy)
          {
-            httpClientPolicy.setConnection(ConnectionType.fromValue(connection));
+            HTTPClientPolicy httpClientPolicy = conduit.getClient();
+            if (httpClientPolicy == null)
+            {
+               httpClientPolicy = new HTTPClientPolicy();
+               conduit.setClient(httpClientPolicy);
+            }
+            if (allowChunking != null)
+            {
+               httpClientPolicy.setAllowChunking(allowChunking);
+            }
+            if (chunkingThreshold != null)
+            {
+               httpClientPolicy.setChunkingThreshold(chunkingThreshold);
+            }
+            if (connectionTimeout != null)
+            {
+               httpClientPolicy.setConnectionTimeout(connectionTimeout);
+            }
+            if (receiveTimeout != null)
+            {
+               httpClientPolicy.setReceiveTimeout(receiveTimeout);
+            }
+            if (connection != null)
+            {
+               httpClientPolicy.setConnection(connection);
+            }
          }
       }
    }
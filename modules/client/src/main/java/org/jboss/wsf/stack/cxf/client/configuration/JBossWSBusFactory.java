@@ -21,10 +21,17 @@
  */
 package org.jboss.wsf.stack.cxf.client.configuration;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.BusFactory;
@@ -35,6 +42,7 @@ import org.apache.cxf.buslifecycle.BusLifeCycleManager;
 import org.apache.cxf.configuration.Configurer;
 import org.apache.cxf.resource.ResourceManager;
 import org.jboss.wsf.stack.cxf.client.ClientBusSelector;
+import org.jboss.wsf.stack.cxf.client.Constants;
 import org.jboss.wsf.stack.cxf.client.ProviderImpl;
 import org.jboss.wsf.stack.cxf.client.injection.JBossWSResourceInjectionResolver;
 
@@ -47,10 +55,24 @@ import org.jboss.wsf.stack.cxf.client.injection.JBossWSResourceInjectionResolver
  */
 public class JBossWSBusFactory extends CXFBusFactory
 {
-   private static final Map<ClassLoader, Bus> classLoaderBusses = new WeakHashMap<ClassLoader, Bus>();
+   //classloaders are weakly referenced and the entries are purged when they're collected
+   private static final ConcurrentMap<ClassLoaderKey, BusEntry> classLoaderBusses = new ConcurrentHashMap<ClassLoaderKey, BusEntry>();
+   private static final ReferenceQueue<ClassLoader> collectedClassLoaders = new ReferenceQueue<ClassLoader>();
+   private static final BusEntry nullClassLoaderBus = new BusEntry();
    
    @Override
    public Bus createBus(Map<Class<?>, Object> extensions, Map<String, Object> properties) {
+      ExtensionManagerBus bus = newBus(extensions, properties);
+      
+      possiblySetDefaultBus(bus);
+      initializeBus(bus);
+      bus.initialize();
+      
+      DefaultHTTPConduitFactoryWrapper.install(bus);
+      return bus;
+   }
+   
+   private ExtensionManagerBus newBus(Map<Class<?>, Object> extensions, Map<String, Object> properties) {
       if (extensions == null)
       {
          extensions = new HashMap<Class<?>, Object>();
@@ -63,16 +85,48 @@ public class JBossWSBusFactory extends CXFBusFactory
       //Explicitly ask for the ProviderImpl.class.getClassLoader() to be used for getting
       //cxf bus extensions (as that classloader is the jaxws-client module one which 'sees' all
       //extensions, unless different dependencies are explicitly set)
-      ExtensionManagerBus bus = new ExtensionManagerBus(extensions, properties, ProviderImpl.class.getClassLoader());
-      
-      possiblySetDefaultBus(bus);
-      initializeBus(bus);
-      bus.initialize();
-      
+      return new ExtensionManagerBus(extensions, properties, ProviderImpl.class.getClassLoader());
+   }
+   
+   /**
+    * Creates a bus in the same way as createBus(), except for not setting it as
+    * global or thread default bus; this is used for pre-creating spare busses.
+    */
+   private Bus createSpareBus() {
+      ExtensionManagerBus bus = newBus(null, new HashMap<String, Object>());
+      //the bus is the thread default one while being initialized, as it happens with createBus()
+      BusFactory.setThreadDefaultBus(bus);
+      try {
+         initializeBus(bus);
+         bus.initialize();
+      } finally {
+         BusFactory.setThreadDefaultBus(null);
+      }
       DefaultHTTPConduitFactoryWrapper.install(bus);
       return bus;
    }
    
+   /**
+    * Gets a new bus for a JAXWS client. When the org.jboss.ws.cxf.jaxws-client.bus.spare
+    * system property is set to a positive number, up to that number of busses are created
+    * in advance by a background thread and this method returns one of them if available,
+    * which makes getting a new bus much cheaper for the caller. The returned bus is set as
+    * the thread default bus (and global default bus) if none is set yet, like createBus() does.
+    * 
+    * @return a new bus
+    */
+   public static Bus newClientBus() {
+      if (SpareBusses.SIZE < 1) {
+         return new JBossWSBusFactory().createBus();
+      }
+      final Bus bus = SpareBusses.poll();
+      if (bus == null) {
+         return new JBossWSBusFactory().createBus();
+      }
+      possiblySetDefaultBus(bus);
+      return bus;
+   }
+   
    protected void initializeBus(Bus bus) {
       super.initializeBus(bus);
       final ResourceManager resourceManager = bus.getExtension(ResourceManager.class);
@@ -112,18 +166,7 @@ public class JBossWSBusFactory extends CXFBusFactory
     * @return
     */
    public static Bus getClassLoaderDefaultBus(final ClassLoader classloader, final ClientBusSelector clientBusSelector) {
-      Bus classLoaderBus;
-      synchronized (classLoaderBusses) {
-         classLoaderBus = classLoaderBusses.get(classloader);
-         if (classLoaderBus == null) {
-            classLoaderBus = clientBusSelector.createNewBus();
-            //register a listener for cleaning up the bus from the classloader association in the JBossWSBusFactory
-            BusLifeCycleListener listener = new ClassLoaderDefaultBusLifeCycleListener(classLoaderBus);
-            classLoaderBus.getExtension(BusLifeCycleManager.class).registerLifeCycleListener(listener);
-            classLoaderBusses.put(classloader, classLoaderBus);
-         }
-      }
-      return classLoaderBus;
+      return getBusEntry(classloader).getBus(clientBusSelector);
    }
    
    /**
@@ -133,18 +176,38 @@ public class JBossWSBusFactory extends CXFBusFactory
     * @return
     */
    public static Bus getClassLoaderDefaultBus(final ClassLoader classloader) {
-      Bus classLoaderBus;
-      synchronized (classLoaderBusses) {
-         classLoaderBus = classLoaderBusses.get(classloader);
-         if (classLoaderBus == null) {
-            classLoaderBus = new JBossWSBusFactory().createBus();
-            //register a listener for cleaning up the bus from the classloader association in the JBossWSBusFactory
-            BusLifeCycleListener listener = new ClassLoaderDefaultBusLifeCycleListener(classLoaderBus);
-            classLoaderBus.getExtension(BusLifeCycleManager.class).registerLifeCycleListener(listener);
-            classLoaderBusses.put(classloader, classLoaderBus);
+      return getBusEntry(classloader).getBus(null);
+   }
+   
+   /**
+    * Gets the entry for the given classloader, without locking when the entry is already available;
+    * the bus creation is then synchronized on the entry only, so that it doesn't prevent getting the
+    * bus for other classloaders.
+    * 
+    * @param classloader
+    * @return
+    */
+   private static BusEntry getBusEntry(final ClassLoader classloader) {
+      if (classloader == null) {
+         return nullClassLoaderBus;
+      }
+      BusEntry entry = classLoaderBusses.get(new ClassLoaderKey(classloader, null));
+      if (entry == null) {
+         purgeCollectedClassLoaders();
+         final BusEntry newEntry = new BusEntry();
+         entry = classLoaderBusses.putIfAbsent(new ClassLoaderKey(classloader, collectedClassLoaders), newEntry);
+         if (entry == null) {
+            entry = newEntry;
          }
       }
-      return classLoaderBus;
+      return entry;
+   }
+   
+   private static void purgeCollectedClassLoaders() {
+      Reference<? extends ClassLoader> ref;
+      while ((ref = collectedClassLoaders.poll()) != null) {
+         classLoaderBusses.remove(ref);
+      }
    }
    
    /**
@@ -153,15 +216,72 @@ public class JBossWSBusFactory extends CXFBusFactory
     * @param bus
     */
    public static void clearDefaultBusForAnyClassLoader(final Bus bus) {
-      synchronized (classLoaderBusses) {
-         for (final Iterator<Bus> iterator = classLoaderBusses.values().iterator();
-             iterator.hasNext();) {
-             Bus itBus = iterator.next();
-             if (bus == null || itBus == null|| bus.equals(itBus)) {
-                 iterator.remove();
-             }
+      nullClassLoaderBus.clear(bus);
+      for (final Iterator<BusEntry> iterator = classLoaderBusses.values().iterator(); iterator.hasNext();) {
+         final Bus itBus = iterator.next().bus;
+         if (bus == null || (itBus != null && bus.equals(itBus))) {
+            iterator.remove();
+         }
+      }
+   }
+   
+   /**
+    * A weak reference to a classloader, comparing classloaders by identity
+    */
+   private static final class ClassLoaderKey extends WeakReference<ClassLoader> {
+      private final int hash;
+      
+      ClassLoaderKey(final ClassLoader classloader, final ReferenceQueue<ClassLoader> queue) {
+         super(classloader, queue);
+         this.hash = System.identityHashCode(classloader);
+      }
+      
+      @Override
+      public int hashCode() {
+         return hash;
+      }
+      
+      @Override
+      public boolean equals(Object obj) {
+         if (this == obj) {
+            return true;
+         }
+         if (!(obj instanceof ClassLoaderKey)) {
+            return false;
          }
-     }
+         final ClassLoader cl = get();
+         return cl != null && cl == ((ClassLoaderKey)obj).get();
+      }
+   }
+   
+   /**
+    * Holds the default bus of a classloader, which is created once on first request
+    */
+   private static final class BusEntry {
+      private volatile Bus bus;
+      
+      Bus getBus(final ClientBusSelector clientBusSelector) {
+         Bus b = bus;
+         if (b == null) {
+            synchronized (this) {
+               b = bus;
+               if (b == null) {
+                  b = clientBusSelector != null ? clientBusSelector.createNewBus() : new JBossWSBusFactory().createBus();
+                  //register a listener for cleaning up the bus from the classloader association in the JBossWSBusFactory
+                  BusLifeCycleListener listener = new ClassLoaderDefaultBusLifeCycleListener(b);
+                  b.getExtension(BusLifeCycleManager.class).registerLifeCycleListener(listener);
+                  bus = b;
+               }
+            }
+         }
+         return b;
+      }
+      
+      synchronized void clear(final Bus b) {
+         if (bus != null && (b == null || b.equals(bus))) {
+            bus = null;
+         }
+      }
    }
    
    private static class ClassLoaderDefaultBusLifeCycleListener implements BusLifeCycleListener {
@@ -190,4 +310,37 @@ public class JBossWSBusFactory extends CXFBusFactory
          JBossWSBusFactory.clearDefaultBusForAnyClassLoader(this.bus);
       }
    }
+   
+   private static final class SpareBusses {
+      private static final int SIZE = SecurityActions.getInteger(Constants.JBWS_CXF_JAXWS_CLIENT_BUS_SPARE, 0);
+      private static final Queue<Bus> busses = new ConcurrentLinkedQueue<Bus>();
+      private static final AtomicBoolean filling = new AtomicBoolean();
+      
+      static Bus poll() {
+         final Bus bus = busses.poll();
+         fill();
+         return bus;
+      }
+      
+      private static void fill() {
+         if (busses.size() < SIZE && filling.compareAndSet(false, true)) {
+            Thread t = new Thread(new Runnable() {
+               @Override
+               public void run() {
+                  //use the jaxws-client module classloader, so that no deployment classloader is leaked
+                  SecurityActions.setContextClassLoader(ProviderImpl.class.getClassLoader());
+                  try {
+                     while (busses.size() < SIZE) {
+                        busses.offer(new JBossWSBusFactory().createSpareBus());
+                     }
+                  } finally {
+                     filling.set(false);
+                  }
+               }
+            }, "jbossws-client-bus-prewarm");
+            t.setDaemon(true);
+            t.start();
+         }
+      }
+   }
 }
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.client;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.namespace.QName;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.Service;
+
+import junit.framework.TestCase;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.jboss.wsf.stack.cxf.client.configuration.EndpointInterface;
+
+/**
+ * A test case for the PortPool
+ */
+public class PortPoolTest extends TestCase
+{
+   private static final QName SERVICE_NAME = new QName("http://www.openuri.org/2004/04/HelloWorld", "EndpointService");
+   private static final QName PORT_NAME = new QName("http://www.openuri.org/2004/04/HelloWorld", "EndpointInterfacePort");
+
+   private Bus bus;
+   private Service service;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      bus = BusFactory.newInstance().createBus();
+      BusFactory.setThreadDefaultBus(bus);
+      service = Service.create(PortPoolTest.class.getResource("/META-INF/TestService.wsdl"), SERVICE_NAME);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      if (bus != null)
+      {
+         bus.shutdown(true);
+      }
+      BusFactory.setThreadDefaultBus(null);
+   }
+
+   public void testCheckoutCheckin() throws Exception
+   {
+      PortPool<EndpointInterface> pool = new PortPool<EndpointInterface>(service, PORT_NAME, EndpointInterface.class, 1, 2, 0);
+      try
+      {
+         assertEquals(1, pool.getIdleCount());
+         EndpointInterface p1 = pool.checkout();
+         EndpointInterface p2 = pool.checkout();
+         assertNotSame(p1, p2);
+         assertEquals(2, pool.getActiveCount());
+         assertNull(pool.checkout(10, TimeUnit.MILLISECONDS));
+         pool.checkin(p1);
+         assertEquals(1, pool.getActiveCount());
+         assertSame(p1, pool.checkout());
+         pool.checkin(p1);
+         pool.checkin(p2);
+         assertEquals(0, pool.getActiveCount());
+         assertEquals(2, pool.getIdleCount());
+         assertEquals(2, pool.getCreatedCount());
+         assertEquals(3, pool.getCheckoutCount());
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   public void testInvalidCheckin() throws Exception
+   {
+      PortPool<EndpointInterface> pool = new PortPool<EndpointInterface>(service, EndpointInterface.class, 1);
+      try
+      {
+         EndpointInterface port = pool.checkout();
+         pool.checkin(port);
+         try
+         {
+            pool.checkin(port);
+            fail("IllegalArgumentException expected");
+         }
+         catch (IllegalArgumentException e)
+         {
+            //expected
+         }
+         try
+         {
+            pool.checkin(service.getPort(PORT_NAME, EndpointInterface.class));
+            fail("IllegalArgumentException expected");
+         }
+         catch (IllegalArgumentException e)
+         {
+            //expected
+         }
+         //the double checkin did not release an additional permit
+         assertEquals(0, pool.getActiveCount());
+         assertSame(port, pool.checkout());
+         assertNull(pool.checkout(10, TimeUnit.MILLISECONDS));
+         pool.checkin(port);
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   public void testRequestContextReset() throws Exception
+   {
+      PortPool<EndpointInterface> pool = new PortPool<EndpointInterface>(service, EndpointInterface.class, 1);
+      try
+      {
+         EndpointInterface port = pool.checkout();
+         ((BindingProvider) port).getRequestContext().put("foo", "bar");
+         pool.checkin(port);
+         port = pool.checkout();
+         assertFalse(((BindingProvider) port).getRequestContext().containsKey("foo"));
+         pool.checkin(port);
+      }
+      finally
+      {
+         pool.close();
+      }
+   }
+
+   public void testClose() throws Exception
+   {
+      PortPool<EndpointInterface> pool = new PortPool<EndpointInterface>(service, PORT_NAME, EndpointInterface.class, 2, 2, 0);
+      EndpointInterface port = pool.checkout();
+      pool.close();
+      assertEquals(0, pool.getIdleCount());
+      try
+      {
+         pool.checkout();
+         fail("IllegalStateException expected");
+      }
+      catch (IllegalStateException e)
+      {
+         //expected
+      }
+      pool.checkin(port);
+      assertEquals(0, pool.getIdleCount());
+      assertEquals(0, pool.getActiveCount());
+   }
+}
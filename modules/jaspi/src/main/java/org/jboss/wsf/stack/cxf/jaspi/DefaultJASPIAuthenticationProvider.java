@@ -23,10 +23,13 @@ package org.jboss.wsf.stack.cxf.jaspi;
 
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.security.auth.message.config.AuthConfigFactory;
 import javax.security.auth.message.config.AuthConfigProvider;
 import javax.security.auth.message.config.ClientAuthConfig;
+import javax.security.auth.message.config.RegistrationListener;
 import javax.security.auth.message.config.ServerAuthConfig;
 import javax.security.auth.message.config.ServerAuthContext;
 
@@ -58,6 +61,12 @@ import org.jboss.wsf.stack.cxf.jaspi.log.Loggers;
  */
 public class DefaultJASPIAuthenticationProvider implements JASPIAuthenticationProvider
 {
+   //resolved client authenticators (which are stateless, hence can be shared among clients), by security domain and appId;
+   //entries are evicted when the AuthConfigProvider registration for their appId changes or their application policy goes away
+   private static final int MAX_CACHED_CLIENT_AUTHENTICATORS = 256;
+   private static final ConcurrentMap<ClientAuthenticatorKey, CachedClientAuthenticator> clientAuthenticators =
+         new ConcurrentHashMap<ClientAuthenticatorKey, CachedClientAuthenticator>();
+
    public DefaultJASPIAuthenticationProvider()
    {
    }
@@ -75,43 +84,102 @@ public class DefaultJASPIAuthenticationProvider implements JASPIAuthenticationPr
          return false;
       }
       ApplicationPolicy appPolicy = SecurityConfiguration.getApplicationPolicy(securityDomain);
+      String contextRoot = client.getEndpoint().getEndpointInfo().getName().toString();
+      String appId = "localhost " + contextRoot;
+      ClientAuthenticatorKey key = new ClientAuthenticatorKey(securityDomain, appId);
       if (appPolicy == null)
       {
          Loggers.ROOT_LOGGER.noApplicationPolicy(securityDomain);
+         evict(key);
          return false;
       }
-      BaseAuthenticationInfo bai = appPolicy.getAuthenticationInfo();
-      if (bai == null || bai instanceof AuthenticationInfo)
+      CachedClientAuthenticator cached = clientAuthenticators.get(key);
+      //the cached authenticator is used only if the application policy has not been changed since it was created
+      if (cached == null || cached.appPolicy != appPolicy || cached.authInfo != appPolicy.getAuthenticationInfo())
       {
-         Loggers.ROOT_LOGGER.noJaspiApplicationPolicy(securityDomain);
-         return false;
+         BaseAuthenticationInfo bai = appPolicy.getAuthenticationInfo();
+         if (bai == null || bai instanceof AuthenticationInfo)
+         {
+            Loggers.ROOT_LOGGER.noJaspiApplicationPolicy(securityDomain);
+            evict(key);
+            return false;
+         }
+         JASPIAuthenticationInfo jai = (JASPIAuthenticationInfo) bai;
+
+         AuthConfigFactory factory = AuthConfigFactory.getFactory();
+         //(re)register the JBossWS provider only if it's not the one in use, as each registration
+         //notifies the listeners of the cached authenticators, which are then evicted
+         AuthConfigProvider provider = factory.getConfigProvider(JBossWSAuthConstants.SOAP_LAYER, appId, null);
+         if (!(provider instanceof JBossWSAuthConfigProvider))
+         {
+            Properties props = new Properties();
+            provider = new JBossWSAuthConfigProvider(props, factory);
+         }
+         final CachedClientAuthenticator entry = new CachedClientAuthenticator(key, appPolicy, jai);
+         provider = factory.getConfigProvider(JBossWSAuthConstants.SOAP_LAYER, appId, entry);
+         JBossCallbackHandler callbackHandler = new JBossCallbackHandler();
+         try
+         {
+            ClientAuthConfig clientConfig = provider.getClientAuthConfig("soap", appId, callbackHandler);
+            entry.authenticator = new JaspiClientAuthenticator(clientConfig, securityDomain, jai);
+         }
+         catch (Exception e)
+         {
+            Loggers.DEPLOYMENT_LOGGER.cannotCreateServerAuthContext(securityDomain, e);
+            factory.detachListener(entry, JBossWSAuthConstants.SOAP_LAYER, appId);
+            return false;
+         }
+         cache(entry);
+         cached = entry;
       }
-      JASPIAuthenticationInfo jai = (JASPIAuthenticationInfo) bai;
+      client.getInInterceptors().add(new JaspiClientInInterceptor(cached.authenticator));
+      client.getOutInterceptors().add(new JaspiClientOutInterceptor(cached.authenticator));
 
-      String contextRoot = client.getEndpoint().getEndpointInfo().getName().toString();
-      String appId = "localhost " + contextRoot;
-      AuthConfigFactory factory = AuthConfigFactory.getFactory();
+      return false;
 
-      Properties props = new Properties();
-      AuthConfigProvider provider = new JBossWSAuthConfigProvider(props, factory);
-      provider = factory.getConfigProvider(JBossWSAuthConstants.SOAP_LAYER, appId, null);
-      JBossCallbackHandler callbackHandler = new JBossCallbackHandler();
-      try
+   }
+   
+   private static void cache(CachedClientAuthenticator entry)
+   {
+      if (clientAuthenticators.size() >= MAX_CACHED_CLIENT_AUTHENTICATORS)
       {
-         ClientAuthConfig clientConfig = provider.getClientAuthConfig("soap", appId, callbackHandler);
-         JaspiClientAuthenticator clientAuthenticator = new JaspiClientAuthenticator(clientConfig, securityDomain, jai);
-         client.getInInterceptors().add(new JaspiClientInInterceptor(clientAuthenticator));
-         client.getOutInterceptors().add(new JaspiClientOutInterceptor(clientAuthenticator));
+         //drop the entries whose security domain has gone away or changed, or all of them if none
+         for (Map.Entry<ClientAuthenticatorKey, CachedClientAuthenticator> e : clientAuthenticators.entrySet())
+         {
+            if (SecurityConfiguration.getApplicationPolicy(e.getKey().securityDomain) != e.getValue().appPolicy)
+            {
+               evict(e.getKey());
+            }
+         }
+         if (clientAuthenticators.size() >= MAX_CACHED_CLIENT_AUTHENTICATORS)
+         {
+            for (ClientAuthenticatorKey key : clientAuthenticators.keySet())
+            {
+               evict(key);
+            }
+         }
       }
-      catch (Exception e)
+      CachedClientAuthenticator previous = clientAuthenticators.put(entry.key, entry);
+      if (previous != null && previous != entry)
       {
-         Loggers.DEPLOYMENT_LOGGER.cannotCreateServerAuthContext(securityDomain, e);
+         previous.detach();
       }
+      if (entry.invalidated)
+      {
+         //the provider registration changed while the authenticator was being created
+         clientAuthenticators.remove(entry.key, entry);
+      }
+   }
 
-      return false;
-
+   private static void evict(ClientAuthenticatorKey key)
+   {
+      CachedClientAuthenticator cached = clientAuthenticators.remove(key);
+      if (cached != null)
+      {
+         cached.detach();
+      }
    }
-   
+
    public boolean enableServerAuthentication(Deployment dep, JBossWebservicesMetaData wsmd)
    {
       String securityDomain = null;
@@ -224,4 +292,68 @@ public class DefaultJASPIAuthenticationProvider implements JASPIAuthenticationPr
       }
       return false;
    }
+
+   private static final class ClientAuthenticatorKey
+   {
+      private final String securityDomain;
+      private final String appId;
+
+      ClientAuthenticatorKey(String securityDomain, String appId)
+      {
+         this.securityDomain = securityDomain;
+         this.appId = appId;
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * securityDomain.hashCode() + appId.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof ClientAuthenticatorKey))
+         {
+            return false;
+         }
+         ClientAuthenticatorKey other = (ClientAuthenticatorKey) obj;
+         return securityDomain.equals(other.securityDomain) && appId.equals(other.appId);
+      }
+   }
+
+   /**
+    * A cached client authenticator; this is also the listener for changes to the AuthConfigProvider
+    * registration its ClientAuthConfig comes from.
+    */
+   private static final class CachedClientAuthenticator implements RegistrationListener
+   {
+      private final ClientAuthenticatorKey key;
+      private final ApplicationPolicy appPolicy;
+      private final BaseAuthenticationInfo authInfo;
+      private volatile JaspiClientAuthenticator authenticator;
+      private volatile boolean invalidated;
+
+      CachedClientAuthenticator(ClientAuthenticatorKey key, ApplicationPolicy appPolicy, BaseAuthenticationInfo authInfo)
+      {
+         this.key = key;
+         this.appPolicy = appPolicy;
+         this.authInfo = authInfo;
+      }
+
+      @Override
+      public void notify(String layer, String appContext)
+      {
+         invalidated = true;
+         clientAuthenticators.remove(key, this);
+      }
+
+      void detach()
+      {
+         if (!invalidated)
+         {
+            AuthConfigFactory.getFactory().detachListener(this, JBossWSAuthConstants.SOAP_LAYER, key.appId);
+         }
+      }
+   }
 }
@@ -21,18 +21,11 @@
  */
 package org.jboss.wsf.stack.cxf.jaspi.interceptor;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-
-import javax.xml.soap.MessageFactory;
-import javax.xml.soap.SOAPException;
 import javax.xml.soap.SOAPMessage;
 
 import org.apache.cxf.binding.soap.SoapMessage;
 import org.apache.cxf.binding.soap.interceptor.AbstractSoapInterceptor;
 import org.apache.cxf.binding.soap.saaj.SAAJInInterceptor;
-import org.apache.cxf.binding.soap.saaj.SAAJInInterceptor.SAAJPreInInterceptor;
 import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.phase.Phase;
 import org.jboss.wsf.stack.cxf.jaspi.JaspiServerAuthenticator;
@@ -67,34 +60,15 @@ public class JaspiSeverInInterceptor extends AbstractSoapInterceptor
          return;
       }
 
-      SOAPMessage copyMessage = null;
-      try
-      {
-         MessageFactory messageFactory = SAAJPreInInterceptor.INSTANCE.getFactory(message);
-         ByteArrayOutputStream bout = new ByteArrayOutputStream();
-         soapMessage.writeTo(bout);
-         copyMessage = messageFactory.createMessage(soapMessage.getMimeHeaders(), new ByteArrayInputStream(bout.toByteArray()));
-      }
-      catch (SOAPException e)
-      {
-         throw new Fault(e);
-      }
-      catch (IOException e)
-      {
-         throw new Fault(e);
-      }
-      if (copyMessage != null) {
-         message.put(SOAPMessage.class, copyMessage);
-      }
       try
       {
          authManager.validateRequest(message);
       }
       finally
       {
+         //the request is read back from the in message when securing the response
          message.put(SOAPMessage.class, soapMessage);
       }
-
    }
 
 }
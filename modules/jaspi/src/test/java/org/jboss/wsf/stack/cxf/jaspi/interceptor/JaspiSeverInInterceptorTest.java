@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.jaspi.interceptor;
+
+import javax.security.auth.Subject;
+import javax.security.auth.message.AuthStatus;
+import javax.security.auth.message.MessageInfo;
+import javax.security.auth.message.config.ServerAuthContext;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPMessage;
+
+import junit.framework.TestCase;
+
+import org.apache.cxf.binding.soap.SoapMessage;
+import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.ExchangeImpl;
+import org.apache.cxf.message.MessageImpl;
+import org.jboss.wsf.stack.cxf.jaspi.JaspiServerAuthenticator;
+
+/**
+ * Tests for JaspiSeverInInterceptor
+ */
+public class JaspiSeverInInterceptorTest extends TestCase
+{
+   public void testRequestAvailableWhenSecuringResponse() throws Exception
+   {
+      RecordingServerAuthContext sctx = new RecordingServerAuthContext();
+      JaspiServerAuthenticator authenticator = new JaspiServerAuthenticator(sctx);
+
+      Exchange exchange = new ExchangeImpl();
+      SoapMessage request = new SoapMessage(new MessageImpl());
+      request.setExchange(exchange);
+      exchange.setInMessage(request);
+      SOAPMessage requestSoapMessage = MessageFactory.newInstance().createMessage();
+      request.setContent(SOAPMessage.class, requestSoapMessage);
+
+      new JaspiSeverInInterceptor(authenticator).handleMessage(request);
+      assertSame(requestSoapMessage, sctx.validatedRequest);
+
+      SoapMessage response = new SoapMessage(new MessageImpl());
+      response.setExchange(exchange);
+      exchange.setOutMessage(response);
+      SOAPMessage responseSoapMessage = MessageFactory.newInstance().createMessage();
+      response.setContent(SOAPMessage.class, responseSoapMessage);
+
+      authenticator.secureResponse(response);
+      assertSame(requestSoapMessage, sctx.securedRequest);
+      assertSame(responseSoapMessage, sctx.securedResponse);
+   }
+
+   private static class RecordingServerAuthContext implements ServerAuthContext
+   {
+      Object validatedRequest;
+      Object securedRequest;
+      Object securedResponse;
+
+      @Override
+      public AuthStatus validateRequest(MessageInfo messageInfo, Subject clientSubject, Subject serviceSubject)
+      {
+         validatedRequest = messageInfo.getRequestMessage();
+         return AuthStatus.SUCCESS;
+      }
+
+      @Override
+      public AuthStatus secureResponse(MessageInfo messageInfo, Subject serviceSubject)
+      {
+         securedRequest = messageInfo.getRequestMessage();
+         securedResponse = messageInfo.getResponseMessage();
+         return AuthStatus.SEND_SUCCESS;
+      }
+
+      @Override
+      public void cleanSubject(MessageInfo messageInfo, Subject subject)
+      {
+      }
+   }
+}
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf;
+
+import java.lang.reflect.Method;
+
+import org.apache.cxf.annotations.UseAsyncMethod;
+import org.apache.cxf.service.model.BindingOperationInfo;
+
+/**
+ * The invocation details of an operation which can be computed once when the
+ * endpoint is published: the resolved target method and whether the
+ * {@link UseAsyncMethod} processing is required for it. Plans are stored as
+ * a property of the corresponding BindingOperationInfo.
+ */
+final class InvocationPlan
+{
+   static final String KEY = InvocationPlan.class.getName();
+
+   private final Method method;
+   private final Class<?> serviceClass;
+   private final boolean useAsyncMethod;
+
+   private InvocationPlan(Method method, Class<?> serviceClass, boolean useAsyncMethod)
+   {
+      this.method = method;
+      this.serviceClass = serviceClass;
+      this.useAsyncMethod = useAsyncMethod;
+   }
+
+   /**
+    * Creates a plan for invoking the provided method on instances of the provided service class
+    *
+    * @param method                    the method resolved by the MethodDispatcher
+    * @param serviceClass              the service class
+    * @param checkForUseAsyncMethod    whether the @UseAsyncMethod annotation can be used at all in the deployment
+    * @return the invocation plan
+    */
+   static InvocationPlan create(Method method, Class<?> serviceClass, boolean checkForUseAsyncMethod)
+   {
+      return new InvocationPlan(method, serviceClass, checkForUseAsyncMethod && hasUseAsyncMethod(method, serviceClass));
+   }
+
+   static InvocationPlan get(BindingOperationInfo bop)
+   {
+      return bop.getProperty(KEY, InvocationPlan.class);
+   }
+
+   void store(BindingOperationInfo bop)
+   {
+      bop.setProperty(KEY, this);
+   }
+
+   Method getMethod()
+   {
+      return method;
+   }
+
+   boolean isUseAsyncMethod()
+   {
+      return useAsyncMethod;
+   }
+
+   boolean appliesTo(Class<?> clazz)
+   {
+      return serviceClass == clazz;
+   }
+
+   private static boolean hasUseAsyncMethod(Method method, Class<?> serviceClass)
+   {
+      if (method.isAnnotationPresent(UseAsyncMethod.class))
+      {
+         return true;
+      }
+      //the annotation is usually on the implementation class method, which for Provider
+      //endpoints has a more specific parameter type; being conservative here is fine
+      for (Method m : serviceClass.getMethods())
+      {
+         if (m.getName().equals(method.getName()) && m.getParameterTypes().length == method.getParameterTypes().length
+               && m.isAnnotationPresent(UseAsyncMethod.class))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+}
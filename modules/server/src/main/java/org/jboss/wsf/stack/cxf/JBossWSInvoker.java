@@ -40,29 +40,41 @@
 package org.jboss.wsf.stack.cxf;
 
 import java.lang.reflect.Method;
+import java.security.AccessController;
 import java.util.List;
 
+import javax.security.auth.Subject;
 import javax.xml.ws.WebServiceContext;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.BusFactory;
+import org.apache.cxf.continuations.Continuation;
+import org.apache.cxf.continuations.ContinuationProvider;
 import org.apache.cxf.helpers.CastUtils;
+import org.apache.cxf.interceptor.Fault;
 import org.apache.cxf.jaxws.JAXWSMethodInvoker;
 import org.apache.cxf.jaxws.context.WebServiceContextImpl;
 import org.apache.cxf.message.Exchange;
+import org.apache.cxf.message.Message;
 import org.apache.cxf.message.MessageContentsList;
+import org.apache.cxf.message.MessageUtils;
+import org.apache.cxf.security.SecurityContext;
 import org.apache.cxf.service.invoker.Factory;
 import org.apache.cxf.service.invoker.Invoker;
 import org.apache.cxf.service.invoker.MethodDispatcher;
 import org.apache.cxf.service.model.BindingOperationInfo;
 import org.jboss.ws.api.util.ServiceLoader;
+import org.jboss.ws.common.management.AbstractServerConfig;
 import org.jboss.wsf.spi.classloading.ClassLoaderProvider;
 import org.jboss.wsf.spi.deployment.Endpoint;
 import org.jboss.wsf.spi.invocation.Invocation;
 import org.jboss.wsf.spi.invocation.InvocationContext;
 import org.jboss.wsf.spi.invocation.InvocationHandler;
 import org.jboss.wsf.spi.invocation.NamespaceContextSelectorWrapperFactory;
+import org.jboss.wsf.spi.management.ServerConfig;
 import org.jboss.wsf.stack.cxf.client.Constants;
+import org.jboss.wsf.stack.cxf.management.EndpointStatistics;
+import org.jboss.wsf.stack.cxf.management.RequestStatistics;
 
 /**
  * A JBossWS extension of the Apache CXF JAXWSMethodInvoker invoker.
@@ -89,6 +101,12 @@ import org.jboss.wsf.stack.cxf.client.Constants;
  *      v
  * JBossWSInvoker::performInvocation(Exchange e, Object o, Method m, Object[] o2)
  * 
+ * When the org.jboss.ws.cxf.virtualThreads.enabled property is set (in jboss-webservices.xml
+ * or as an endpoint property) and a CXF continuation is available, the request is suspended
+ * and the flow above is run on a virtual thread; the request is then resumed and the
+ * ServiceInvokerInterceptor gets the result when calling JBossWSInvoker::invoke again.
+ * Requests from authenticated callers are always invoked on the container thread, as the
+ * security identity associated to that thread can't be propagated to the virtual thread.
  * 
  * @author alessio.soldano@jboss.com
  * @author Thomas.Diesler@jboss.org
@@ -98,6 +116,9 @@ import org.jboss.wsf.stack.cxf.client.Constants;
 public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
 {
    private static final boolean disableDepUserDefThreadBus = Boolean.getBoolean(Constants.JBWS_CXF_DISABLE_DEPLOYMENT_USER_DEFAULT_THREAD_BUS);
+   //a WebServiceContextImpl with no explicit message context always resolves the one associated
+   //to the current thread by the CXF invoker, hence a single stateless instance can be shared
+   private static final WebServiceContext WEB_SERVICE_CONTEXT = new WebServiceContextImpl(null);
    
    private Object targetBean;
    private final NamespaceContextSelectorWrapperFactory nsCtxSelectorFactory;
@@ -119,6 +140,40 @@ public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
       this.targetBean = targetBean;
    }
 
+   /**
+    * Computes the invocation plans for the operations of the provided (published) endpoint,
+    * so that the target method resolution and the @UseAsyncMethod checks are not repeated
+    * for each invocation.
+    * 
+    * @param endpoint   the published endpoint
+    */
+   public void prepareInvocationPlans(org.apache.cxf.endpoint.Endpoint endpoint)
+   {
+      final MethodDispatcher md = (MethodDispatcher) endpoint.getService().get(MethodDispatcher.class.getName());
+      if (targetBean == null || md == null)
+      {
+         //the service object is resolved for each invocation, no plan can be computed in advance
+         return;
+      }
+      for (BindingOperationInfo bop : endpoint.getEndpointInfo().getBinding().getOperations())
+      {
+         prepareInvocationPlan(md, bop);
+         if (bop.isUnwrappedCapable())
+         {
+            prepareInvocationPlan(md, bop.getUnwrappedOperation());
+         }
+      }
+   }
+   
+   private void prepareInvocationPlan(MethodDispatcher md, BindingOperationInfo bop)
+   {
+      final Method m = md.getMethod(bop);
+      if (m != null)
+      {
+         InvocationPlan.create(m, targetBean.getClass(), checkForUseAsyncMethod).store(bop);
+      }
+   }
+
    /**
     * This overrides org.apache.cxf.jaxws.AbstractInvoker in order for using the JBoss AS target bean
     * and simplifying the business method matching
@@ -126,8 +181,13 @@ public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
    @Override
    public Object invoke(Exchange exchange, Object o)
    {
+      final Continuation continuation = getVirtualThreadContinuation(exchange);
+      if (continuation != null && !continuation.isNew() && continuation.getObject() instanceof VirtualThreadInvocation)
+      {
+         //the request has been resumed after the invocation completed on a virtual thread
+         return ((VirtualThreadInvocation) continuation.getObject()).getResult();
+      }
       BindingOperationInfo bop = exchange.getBindingOperationInfo();
-      MethodDispatcher md = (MethodDispatcher) exchange.getService().get(MethodDispatcher.class.getName());
       List<Object> params = null;
       if (o instanceof List) {
          params = CastUtils.cast((List<?>) o);
@@ -135,14 +195,171 @@ public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
          params = new MessageContentsList(o);
       }
       final Object tb = (factory == null) ? targetBean : this.getServiceObject(exchange);
-      final Method method = (bop == null) ? null : md.getMethod(bop);
+      final InvocationPlan plan = (bop == null) ? null : InvocationPlan.get(bop);
+      final Method method;
+      final boolean useAsyncMethod;
+      if (plan != null && plan.appliesTo(tb.getClass()))
+      {
+         method = plan.getMethod();
+         useAsyncMethod = plan.isUseAsyncMethod();
+      }
+      else
+      {
+         MethodDispatcher md = (MethodDispatcher) exchange.getService().get(MethodDispatcher.class.getName());
+         method = (bop == null) ? null : md.getMethod(bop);
+         useAsyncMethod = checkForUseAsyncMethod;
+      }
       if (method == null)
       {
          throw Messages.MESSAGES.missingBindingOpeartionAndDispatchedMethod();
       }
       //performance optimization, adjustMethodAndParams currently looks for @UseAsyncMethod (which is expensive) and only performs actions if it's found
-      final Method fm = checkForUseAsyncMethod ? adjustMethodAndParams(md.getMethod(bop), exchange, params, tb.getClass()) : method;
-      return invoke(exchange, tb, fm, params);
+      final Method fm = useAsyncMethod ? adjustMethodAndParams(method, exchange, params, tb.getClass()) : method;
+      final RequestStatistics opStats = getOperationStatistics(exchange, bop);
+      //@UseAsyncMethod invocations already rely on the continuation, hence they're not moved to virtual threads
+      if (continuation != null && fm == method)
+      {
+         return invokeOnVirtualThread(continuation, exchange, tb, fm, params, opStats);
+      }
+      return invoke(exchange, tb, fm, params, opStats);
+   }
+   
+   private Object invoke(Exchange exchange, Object tb, Method m, List<Object> params, RequestStatistics opStats)
+   {
+      if (opStats == null)
+      {
+         return invoke(exchange, tb, m, params);
+      }
+      final long beginTime = opStats.requestStarted();
+      boolean fault = true;
+      try
+      {
+         final Object result = invoke(exchange, tb, m, params);
+         fault = false;
+         return result;
+      }
+      finally
+      {
+         if (fault)
+         {
+            opStats.faultCompleted(beginTime);
+         }
+         else
+         {
+            opStats.responseCompleted(beginTime);
+         }
+      }
+   }
+   
+   /**
+    * Suspends the request and performs the invocation on a virtual thread, which is given
+    * the current TCCL, thread default bus and namespace context selector; the request is
+    * resumed when the invocation completes.
+    */
+   private Object invokeOnVirtualThread(final Continuation continuation, final Exchange exchange, final Object tb,
+         final Method m, final List<Object> params, final RequestStatistics opStats)
+   {
+      final ClassLoader tccl = SecurityActions.getContextClassLoader();
+      final Bus threadBus = BusFactory.getThreadDefaultBus(false);
+      //the selector of one-way requests is already stored and set by the NsCtxSelectorStoreInterceptor / performInvocation
+      final boolean propagateSelector = !exchange.isOneWay() && nsCtxSelectorFactory != null;
+      if (propagateSelector)
+      {
+         nsCtxSelectorFactory.getWrapper().storeCurrentThreadSelector(exchange);
+      }
+      final VirtualThreadInvocation vti = new VirtualThreadInvocation();
+      synchronized (continuation)
+      {
+         continuation.setObject(vti);
+         continuation.suspend(0);
+      }
+      VirtualThreadExecutor.getInstance().execute(new Runnable()
+      {
+         @Override
+         public void run()
+         {
+            SecurityActions.setContextClassLoader(tccl);
+            BusFactory.setThreadDefaultBus(threadBus);
+            if (propagateSelector)
+            {
+               nsCtxSelectorFactory.getWrapper().setCurrentThreadSelector(exchange);
+            }
+            try
+            {
+               vti.setResult(invoke(exchange, tb, m, params, opStats));
+            }
+            catch (RuntimeException e)
+            {
+               vti.setFault(e);
+            }
+            catch (Error e)
+            {
+               vti.setFault(new Fault(e));
+            }
+            finally
+            {
+               if (propagateSelector)
+               {
+                  nsCtxSelectorFactory.getWrapper().clearCurrentThreadSelector(exchange);
+               }
+               BusFactory.setThreadDefaultBus(null);
+               SecurityActions.setContextClassLoader(null);
+               synchronized (continuation)
+               {
+                  continuation.resume();
+               }
+            }
+         }
+      });
+      return null;
+   }
+   
+   private static Continuation getVirtualThreadContinuation(Exchange exchange)
+   {
+      final Message message = exchange.getInMessage();
+      if (message == null || !MessageUtils.isTrue(message.getContextualProperty(Constants.JBWS_CXF_VIRTUAL_THREADS_ENABLED)))
+      {
+         return null;
+      }
+      if (isAuthenticated(message))
+      {
+         return null;
+      }
+      final ContinuationProvider provider = (ContinuationProvider) message.get(ContinuationProvider.class.getName());
+      if (provider == null || VirtualThreadExecutor.getInstance() == null)
+      {
+         return null;
+      }
+      return provider.getContinuation();
+   }
+   
+   private static boolean isAuthenticated(Message message)
+   {
+      if (message.get(Subject.class) != null)
+      {
+         return true;
+      }
+      final SecurityContext sc = message.get(SecurityContext.class);
+      return sc != null && sc.getUserPrincipal() != null;
+   }
+   
+   private static RequestStatistics getOperationStatistics(Exchange exchange, BindingOperationInfo bop)
+   {
+      final Endpoint ep = exchange.get(Endpoint.class);
+      if (ep == null || !(ep.getEndpointMetrics() instanceof EndpointStatistics) || !getServerConfig().isStatisticsEnabled())
+      {
+         return null;
+      }
+      return ((EndpointStatistics)ep.getEndpointMetrics()).getOperationStatistics(bop);
+   }
+   
+   private static ServerConfig getServerConfig()
+   {
+      if (System.getSecurityManager() == null)
+      {
+         return AbstractServerConfig.getServerIntegrationServerConfig();
+      }
+      return AccessController.doPrivileged(AbstractServerConfig.GET_SERVER_INTEGRATION_SERVER_CONFIG);
    }
    
    /**
@@ -179,8 +396,7 @@ public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
    private Invocation createInvocation(InvocationHandler invHandler, Object serviceObject, Endpoint ep, Method m, Object[] paramArray) {
       Invocation inv = invHandler.createInvocation();
       InvocationContext invContext = inv.getInvocationContext();
-      WebServiceContext wsCtx = new WebServiceContextImpl(null);
-      invContext.addAttachment(WebServiceContext.class, wsCtx);
+      invContext.addAttachment(WebServiceContext.class, WEB_SERVICE_CONTEXT);
       invContext.setTargetBean(serviceObject);
       inv.setJavaMethod(m);
       inv.setArgs(paramArray);
@@ -202,4 +418,29 @@ public class JBossWSInvoker extends JAXWSMethodInvoker implements Invoker
          nsCtxSelectorFactory.getWrapper().clearCurrentThreadSelector(exchange);
       }
    }
+   
+   private static final class VirtualThreadInvocation
+   {
+      private volatile Object result;
+      private volatile RuntimeException fault;
+      
+      void setResult(Object result)
+      {
+         this.result = result;
+      }
+      
+      void setFault(RuntimeException fault)
+      {
+         this.fault = fault;
+      }
+      
+      Object getResult()
+      {
+         if (fault != null)
+         {
+            throw fault;
+         }
+         return result;
+      }
+   }
 }
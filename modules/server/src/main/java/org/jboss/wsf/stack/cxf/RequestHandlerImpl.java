@@ -54,6 +54,7 @@ import org.jboss.wsf.spi.management.ServerConfig;
 import org.jboss.wsf.spi.metadata.config.SOAPAddressRewriteMetadata;
 import org.jboss.wsf.stack.cxf.addressRewrite.SoapAddressRewriteHelper;
 import org.jboss.wsf.stack.cxf.configuration.BusHolder;
+import org.jboss.wsf.stack.cxf.transport.JBossWSDestinationRegistryImpl;
 import org.jboss.logging.Logger;
 
 /**
@@ -93,7 +94,7 @@ public class RequestHandlerImpl implements RequestHandler
          return;
       }
       final boolean statisticsEnabled = getServerConfig().isStatisticsEnabled();
-      final Long beginTime = statisticsEnabled == true ? initRequestMetrics(ep) : 0;
+      final long beginTime = statisticsEnabled ? initRequestMetrics(ep) : 0;
       final Deployment dep = ep.getService().getDeployment();
       final AbstractHTTPDestination dest = findDestination(req, dep.getAttachment(BusHolder.class).getBus());
       final HttpServletResponseWrapper response = new HttpServletResponseWrapper(res);
@@ -143,6 +144,16 @@ public class RequestHandlerImpl implements RequestHandler
       {
          throw Messages.MESSAGES.cannotObtainRegistry(DestinationRegistry.class.getName());
       }
+      if (destRegistry instanceof JBossWSDestinationRegistryImpl)
+      {
+         //use the precomputed routing index (exact path map + longest prefix trie)
+         final AbstractHTTPDestination dest = ((JBossWSDestinationRegistryImpl)destRegistry).findDestination(requestURI);
+         if (dest == null)
+         {
+            throw Messages.MESSAGES.cannotObtainDestinationFor(requestURI);
+         }
+         return dest;
+      }
       requestURI = pathPattern.matcher(requestURI).replaceAll("/");
       //first try looking up the destination in the registry map
       final AbstractHTTPDestination dest = destRegistry.getDestinationForPath(requestURI, true);
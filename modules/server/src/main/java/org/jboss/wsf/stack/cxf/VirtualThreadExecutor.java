@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the executor running endpoint invocations on virtual threads,
+ * when those are available in the current JVM (the executor is looked up
+ * through reflection, as the codebase is meant to run on older JVMs too).
+ */
+final class VirtualThreadExecutor
+{
+   private VirtualThreadExecutor()
+   {
+      //NOOP
+   }
+
+   /**
+    * Gets the virtual thread per task executor
+    *
+    * @return the executor or null if virtual threads are not available
+    */
+   static ExecutorService getInstance()
+   {
+      return Holder.EXECUTOR;
+   }
+
+   private static final class Holder
+   {
+      private static final ExecutorService EXECUTOR = createExecutor();
+
+      private static ExecutorService createExecutor()
+      {
+         try
+         {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+         }
+         catch (Exception e)
+         {
+            Loggers.ROOT_LOGGER.virtualThreadsNotAvailable();
+            return null;
+         }
+      }
+   }
+}
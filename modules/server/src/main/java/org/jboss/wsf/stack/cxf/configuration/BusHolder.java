@@ -22,18 +22,24 @@
 package org.jboss.wsf.stack.cxf.configuration;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.ws.handler.Handler;
 import javax.xml.ws.soap.SOAPBinding;
 
 import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
 import org.apache.cxf.annotations.UseAsyncMethod;
 import org.apache.cxf.buslifecycle.BusLifeCycleListener;
 import org.apache.cxf.buslifecycle.BusLifeCycleManager;
@@ -50,6 +56,7 @@ import org.apache.cxf.resource.ResourceResolver;
 import org.apache.cxf.service.factory.FactoryBeanListener;
 import org.apache.cxf.service.factory.FactoryBeanListenerManager;
 import org.apache.cxf.service.invoker.Invoker;
+import org.apache.cxf.service.model.BindingOperationInfo;
 import org.apache.cxf.staxutils.XMLStreamReaderWrapper;
 import org.apache.cxf.transport.http.HttpDestinationFactory;
 import org.apache.cxf.transport.servlet.ServletDestinationFactory;
@@ -66,12 +73,15 @@ import org.apache.cxf.wsdl.WSDLManager;
 import org.apache.cxf.wsdl11.WSDLManagerImpl;
 import org.jboss.ws.api.annotation.PolicySets;
 import org.jboss.ws.api.binding.BindingCustomization;
+import org.jboss.ws.api.util.ServiceLoader;
 import org.jboss.wsf.spi.SPIProvider;
 import org.jboss.wsf.spi.WSFException;
 import org.jboss.wsf.spi.classloading.ClassLoaderProvider;
 import org.jboss.wsf.spi.deployment.AnnotationsInfo;
 import org.jboss.wsf.spi.deployment.ArchiveDeployment;
 import org.jboss.wsf.spi.deployment.Deployment;
+import org.jboss.wsf.spi.deployment.Endpoint;
+import org.jboss.wsf.spi.invocation.NamespaceContextSelectorWrapperFactory;
 import org.jboss.wsf.spi.metadata.config.SOAPAddressRewriteMetadata;
 import org.jboss.wsf.spi.metadata.webservices.JBossWebservicesMetaData;
 import org.jboss.wsf.spi.security.JASPIAuthenticationProvider;
@@ -92,10 +102,12 @@ import org.jboss.wsf.stack.cxf.interceptor.GracefulShutdownInterceptor;
 import org.jboss.wsf.stack.cxf.interceptor.HandlerAuthInterceptor;
 import org.jboss.wsf.stack.cxf.interceptor.NsCtxSelectorStoreInterceptor;
 import org.jboss.wsf.stack.cxf.interceptor.WSDLSoapAddressRewriteInterceptor;
+import org.jboss.wsf.stack.cxf.management.EndpointStatistics;
 import org.jboss.wsf.stack.cxf.management.InstrumentationManagerExtImpl;
 import org.jboss.wsf.stack.cxf.metadata.services.DDBeans;
 import org.jboss.wsf.stack.cxf.metadata.services.DDEndpoint;
 import org.jboss.wsf.stack.cxf.security.authentication.AuthenticationMgrSubjectCreatingInterceptor;
+import org.jboss.wsf.stack.cxf.security.authentication.SubjectCache;
 
 /**
  * A wrapper of the Bus for performing most of the configurations required on it by JBossWS
@@ -114,6 +126,7 @@ public class BusHolder
    protected Bus bus;
    protected BusHolderLifeCycleListener busHolderListener;
    protected FactoryBeanListener policySetsListener;
+   private String wsdlDefinitionCacheKey;
    
    public BusHolder()
    {
@@ -160,6 +173,17 @@ public class BusHolder
          bus.setExtension(configurer, Configurer.class);
       }
       Map<String, String> props = getProperties(wsmd);
+      Map<String, WSDLDefinitionCache.CacheEntry> restoredDefinitions = null;
+      if (isWSDLDefinitionCacheEnabled(props))
+      {
+         wsdlDefinitionCacheKey = dep.getSimpleName();
+         final List<String> wsdlLocations = new ArrayList<String>();
+         for (DDEndpoint dde : metadata.getEndpoints())
+         {
+            wsdlLocations.add(dde.getWsdlLocation());
+         }
+         restoredDefinitions = WSDLDefinitionCache.restore(wsdlDefinitionCacheKey, wsdlLocations, bus.getExtension(WSDLManager.class));
+      }
       
       setInterceptors(bus, dep, props);
       dep.addAttachment(Bus.class, bus);
@@ -189,6 +213,9 @@ public class BusHolder
       setCXFManagement(bus, props); //*first* enabled cxf management if required, *then* add anything else which could be manageable (e.g. work queues)
       setAdditionalWorkQueues(bus, props); 
       setWSDiscovery(bus, props);
+      setSubjectCache(bus, props);
+      setVirtualThreads(bus, props);
+      setAsyncWsdlPublish(bus, props);
       
       AnnotationsInfo ai = dep.getAttachment(AnnotationsInfo.class);
       if (ai == null || ai.hasAnnotatedClasses(PolicySets.class.getName())) {
@@ -207,40 +234,210 @@ public class BusHolder
       
       FeatureUtils.addFeatures(bus, bus, props);
 
-      for (DDEndpoint dde : metadata.getEndpoints())
-      {
-         EndpointImpl endpoint = new EndpointImpl(bus, newInstance(dde.getImplementor()));
-         if (dde.getInvoker() != null)
-            endpoint.setInvoker(newInvokerInstance(dde.getInvoker(), dep));
-         endpoint.setAddress(dde.getAddress());
-         endpoint.setEndpointName(dde.getPortName());
-         endpoint.setServiceName(dde.getServiceName());
-         endpoint.setWsdlLocation(dde.getWsdlLocation());
-         setHandlers(endpoint, dde);
-         if (dde.getProperties() != null)
+      final List<DDEndpoint> ddEndpoints = metadata.getEndpoints();
+      final int parallelism = getPublishParallelism(props);
+      if (parallelism > 1 && ddEndpoints.size() > 1)
+      {
+         publishEndpointsInParallel(ddEndpoints, Math.min(parallelism, ddEndpoints.size()), dep);
+      }
+      else
+      {
+         for (DDEndpoint dde : ddEndpoints)
+         {
+            EndpointImpl endpoint = createEndpoint(dde, dep);
+            endpoint.publish();
+            endpointPublished(endpoint, dde, dep);
+         }
+      }
+      if (restoredDefinitions != null)
+      {
+         WSDLDefinitionCache.store(wsdlDefinitionCacheKey, bus.getExtension(WSDLManager.class), restoredDefinitions);
+      }
+      configured = true;
+   }
+   
+   private EndpointImpl createEndpoint(DDEndpoint dde, Deployment dep)
+   {
+      EndpointImpl endpoint = new EndpointImpl(bus, newInstance(dde.getImplementor()));
+      if (dde.getInvoker() != null)
+         endpoint.setInvoker(newInvokerInstance(dde.getInvoker(), dep));
+      endpoint.setAddress(dde.getAddress());
+      endpoint.setEndpointName(dde.getPortName());
+      endpoint.setServiceName(dde.getServiceName());
+      endpoint.setWsdlLocation(dde.getWsdlLocation());
+      setHandlers(endpoint, dde);
+      if (dde.getProperties() != null)
+      {
+         Map<String, Object> p = new HashMap<String, Object>();
+         p.putAll(dde.getProperties());
+         endpoint.setProperties(p);
+      }
+      if (dde.isAddressingEnabled()) 
+      {
+         WSAddressingFeature addressingFeature = new WSAddressingFeature();
+         addressingFeature.setAddressingRequired(dde.isAddressingRequired());
+         addressingFeature.setResponses(dde.getAddressingResponses());
+         endpoint.getFeatures().add(addressingFeature);
+      }
+      endpoint.setPublishedEndpointUrl(dde.getPublishedEndpointUrl());
+      endpoint.setSOAPAddressRewriteMetadata(dep.getAttachment(SOAPAddressRewriteMetadata.class));
+      return endpoint;
+   }
+   
+   private void endpointPublished(EndpointImpl endpoint, DDEndpoint dde, Deployment dep)
+   {
+      endpoints.add(endpoint);
+      setEndpointStatistics(bus, endpoint, dep);
+      if (dde.isMtomEnabled())
+      {
+         SOAPBinding binding = (SOAPBinding) endpoint.getBinding();
+         binding.setMTOMEnabled(true);
+      }
+   }
+   
+   /**
+    * Creates and publishes the endpoints on a bounded fork-join pool, so that the service models
+    * and JAXB contexts of independent endpoints are built concurrently. The tasks run with the
+    * caller's TCCL, thread default bus and java:comp namespace context selector (implementors are
+    * created and injected on the pool threads); the ServerBeanCustomizer serializes its changes to
+    * the shared Deployment endpoints on the deployment. The published endpoints
+    * are then processed in the descriptor order; the first publish failure (including errors), if any,
+    * is rethrown after all the endpoints have been processed (the successfully published ones are stopped when
+    * closing this holder as usual).
+    */
+   private void publishEndpointsInParallel(List<DDEndpoint> ddEndpoints, int parallelism, final Deployment dep)
+   {
+      final ClassLoader tccl = SecurityActions.getContextClassLoader();
+      final NamespaceContextSelectorWrapperFactory nsCtxSelectorFactory = (NamespaceContextSelectorWrapperFactory) ServiceLoader.loadService(
+            NamespaceContextSelectorWrapperFactory.class.getName(), null, ClassLoaderProvider.getDefaultProvider().getServerIntegrationClassLoader());
+      final Map<String, Object> selectorHolder = new HashMap<String, Object>();
+      if (nsCtxSelectorFactory != null)
+      {
+         nsCtxSelectorFactory.getWrapper().storeCurrentThreadSelector(selectorHolder);
+      }
+      final ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try
+      {
+         final List<ForkJoinTask<EndpointImpl>> tasks = new ArrayList<ForkJoinTask<EndpointImpl>>(ddEndpoints.size());
+         for (final DDEndpoint dde : ddEndpoints)
+         {
+            tasks.add(pool.submit(new Callable<EndpointImpl>()
+            {
+               @Override
+               public EndpointImpl call()
+               {
+                  final ClassLoader origTccl = SecurityActions.getContextClassLoader();
+                  //each task gets its own copy, as clearing the selector removes it from the map
+                  final Map<String, Object> selector = new HashMap<String, Object>(selectorHolder);
+                  SecurityActions.setContextClassLoader(tccl);
+                  BusFactory.setThreadDefaultBus(bus);
+                  if (nsCtxSelectorFactory != null)
+                  {
+                     nsCtxSelectorFactory.getWrapper().setCurrentThreadSelector(selector);
+                  }
+                  try
+                  {
+                     EndpointImpl endpoint = createEndpoint(dde, dep);
+                     endpoint.publish();
+                     return endpoint;
+                  }
+                  finally
+                  {
+                     if (nsCtxSelectorFactory != null)
+                     {
+                        nsCtxSelectorFactory.getWrapper().clearCurrentThreadSelector(selector);
+                     }
+                     BusFactory.setThreadDefaultBus(null);
+                     SecurityActions.setContextClassLoader(origTccl);
+                  }
+               }
+            }));
+         }
+         Throwable failure = null;
+         for (int i = 0; i < ddEndpoints.size(); i++)
+         {
+            try
+            {
+               endpointPublished(tasks.get(i).join(), ddEndpoints.get(i), dep);
+            }
+            catch (Throwable t)
+            {
+               if (failure == null)
+               {
+                  failure = t;
+               }
+            }
+         }
+         if (failure instanceof RuntimeException)
          {
-            Map<String, Object> p = new HashMap<String, Object>();
-            p.putAll(dde.getProperties());
-            endpoint.setProperties(p);
+            throw (RuntimeException) failure;
          }
-         if (dde.isAddressingEnabled()) 
+         else if (failure instanceof Error)
          {
-            WSAddressingFeature addressingFeature = new WSAddressingFeature();
-            addressingFeature.setAddressingRequired(dde.isAddressingRequired());
-            addressingFeature.setResponses(dde.getAddressingResponses());
-            endpoint.getFeatures().add(addressingFeature);
+            throw (Error) failure;
          }
-         endpoint.setPublishedEndpointUrl(dde.getPublishedEndpointUrl());
-         endpoint.setSOAPAddressRewriteMetadata(dep.getAttachment(SOAPAddressRewriteMetadata.class));
-         endpoint.publish();
-         endpoints.add(endpoint);
-         if (dde.isMtomEnabled())
+         else if (failure != null)
          {
-            SOAPBinding binding = (SOAPBinding) endpoint.getBinding();
-            binding.setMTOMEnabled(true);
+            throw new RuntimeException(failure);
+         }
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+   
+   /**
+    * Gets the number of endpoints to be concurrently published, as set in jboss-webservices.xml:
+    *   org.jboss.ws.cxf.parallelPublish.enabled = true
+    *   org.jboss.ws.cxf.parallelPublish.parallelism = number of available processors (default)
+    * 
+    * @param props
+    * @return the parallelism, 1 when parallel publishing is disabled
+    */
+   private static int getPublishParallelism(Map<String, String> props)
+   {
+      if (props != null && !props.isEmpty())
+      {
+         final String p = props.get(Constants.JBWS_CXF_PARALLEL_PUBLISH_ENABLED);
+         if ("true".equalsIgnoreCase(p) || "1".equalsIgnoreCase(p))
+         {
+            return parseInt(props.get(Constants.JBWS_CXF_PARALLEL_PUBLISH_PARALLELISM), Runtime.getRuntime().availableProcessors());
+         }
+      }
+      return 1;
+   }
+   
+   /**
+    * Installs the lock-free EndpointStatistics as metrics of the JBossWS endpoint matching the provided
+    * published endpoint; the statistics are also exposed as MBeans when CXF management is enabled.
+    * 
+    * @param bus        the bus
+    * @param endpoint   the published endpoint
+    * @param dep        the current deployment
+    */
+   private static void setEndpointStatistics(Bus bus, EndpointImpl endpoint, Deployment dep)
+   {
+      final org.apache.cxf.endpoint.Endpoint cxfEp = endpoint.getServer().getEndpoint();
+      for (Endpoint depEp : dep.getService().getEndpoints())
+      {
+         if (depEp.getAttachment(org.apache.cxf.endpoint.Endpoint.class) == cxfEp)
+         {
+            EndpointStatistics stats = new EndpointStatistics();
+            final Collection<BindingOperationInfo> operations = cxfEp.getEndpointInfo().getBinding().getOperations();
+            for (BindingOperationInfo bop : operations)
+            {
+               stats.getOperationStatistics(bop); //pre-create operation statistics
+            }
+            depEp.setEndpointMetrics(stats);
+            InstrumentationManager im = bus.getExtension(InstrumentationManager.class);
+            if (im instanceof InstrumentationManagerExtImpl)
+            {
+               ((InstrumentationManagerExtImpl)im).registerEndpointStatistics(cxfEp.getService().getName(),
+                     cxfEp.getEndpointInfo().getName(), stats, operations);
+            }
          }
       }
-      configured = true;
    }
    
    @SuppressWarnings("rawtypes")
@@ -284,6 +481,11 @@ public class BusHolder
       busHolderListener = null;
       bus.getExtension(FactoryBeanListenerManager.class).removeListener(policySetsListener);
       policySetsListener = null;
+      if (wsdlDefinitionCacheKey != null)
+      {
+         WSDLDefinitionCache.release(wsdlDefinitionCacheKey);
+         wsdlDefinitionCacheKey = null;
+      }
    }
 
    private static Invoker newInvokerInstance(String className, Deployment dep)
@@ -477,6 +679,77 @@ public class BusHolder
       });
    }
    
+   /**
+    * Installs a SubjectCache in the bus if enabled through properties in jboss-webservices.xml:
+    *   org.jboss.ws.cxf.subjectCache.enabled = true
+    *   org.jboss.ws.cxf.subjectCache.maxSize = 1000
+    *   org.jboss.ws.cxf.subjectCache.timeToLive = 60 (seconds)
+    * 
+    * @param bus
+    * @param props
+    */
+   protected static void setSubjectCache(Bus bus, Map<String, String> props) {
+      if (props != null && !props.isEmpty()) {
+         final String p = props.get(Constants.JBWS_CXF_SUBJECT_CACHE_ENABLED);
+         if ("true".equalsIgnoreCase(p) || "1".equalsIgnoreCase(p)) {
+            int maxSize = parseInt(props.get(Constants.JBWS_CXF_SUBJECT_CACHE_MAX_SIZE), SubjectCache.DEFAULT_MAX_SIZE);
+            long ttl = parseLong(props.get(Constants.JBWS_CXF_SUBJECT_CACHE_TTL), SubjectCache.DEFAULT_TIME_TO_LIVE);
+            bus.setExtension(new SubjectCache(maxSize, ttl), SubjectCache.class);
+         }
+      }
+   }
+   
+   /**
+    * Enables running endpoint invocations on virtual threads if required through properties
+    * in jboss-webservices.xml:
+    *   org.jboss.ws.cxf.virtualThreads.enabled = true
+    * The same property can also be set on single endpoints.
+    * 
+    * @param bus
+    * @param props
+    */
+   protected static void setVirtualThreads(Bus bus, Map<String, String> props) {
+      if (props != null && !props.isEmpty()) {
+         final String p = props.get(Constants.JBWS_CXF_VIRTUAL_THREADS_ENABLED);
+         if ("true".equalsIgnoreCase(p) || "1".equalsIgnoreCase(p)) {
+            bus.setProperty(Constants.JBWS_CXF_VIRTUAL_THREADS_ENABLED, true);
+         }
+      }
+   }
+   
+   /**
+    * Enables the asynchronous publishing of the endpoint contracts to the data dir if configured
+    * through a property in jboss-webservices.xml:
+    *   org.jboss.ws.cxf.asyncWsdlPublish.enabled = true
+    * 
+    * @param bus
+    * @param props
+    */
+   protected static void setAsyncWsdlPublish(Bus bus, Map<String, String> props) {
+      if (props != null && !props.isEmpty()) {
+         final String p = props.get(Constants.JBWS_CXF_ASYNC_WSDL_PUBLISH_ENABLED);
+         if ("true".equalsIgnoreCase(p) || "1".equalsIgnoreCase(p)) {
+            bus.setProperty(Constants.JBWS_CXF_ASYNC_WSDL_PUBLISH_ENABLED, true);
+         }
+      }
+   }
+   
+   /**
+    * Returns true if the WSDL definitions parsed by the deployment bus are to be cached
+    * across redeployments, as configured through a property in jboss-webservices.xml:
+    *   org.jboss.ws.cxf.wsdlDefinitionCache.enabled = true
+    * 
+    * @param props
+    * @return
+    */
+   private static boolean isWSDLDefinitionCacheEnabled(Map<String, String> props) {
+      if (props != null && !props.isEmpty()) {
+         final String p = props.get(Constants.JBWS_CXF_WSDL_DEFINITION_CACHE_ENABLED);
+         return "true".equalsIgnoreCase(p) || "1".equalsIgnoreCase(p);
+      }
+      return false;
+   }
+   
    private static AlternativeSelector getAlternativeSelector(Map<String, String> props) {
       //default to MaximalAlternativeSelector on server side [JBWS-3149]
       AlternativeSelector selector = new MaximalAlternativeSelector();
@@ -57,44 +57,51 @@ public class ServerBeanCustomizer extends BeanCustomizer
 
    private ArchiveDeployment dep;
 
+   /**
+    * Customizes the provided bean; the shared Deployment endpoints are updated holding
+    * the deployment lock, as the endpoints of a deployment might be published concurrently.
+    */
    @Override
    public void customize(Object beanInstance)
    {
-      if (beanInstance instanceof EndpointImpl)
+      synchronized (dep)
       {
-         configureEndpoint((EndpointImpl) beanInstance);
-      }
-      if (beanInstance instanceof ServerFactoryBean)
-      {
-         ServerFactoryBean factory = (ServerFactoryBean) beanInstance;
-
-         if (factory.getInvoker() instanceof JBossWSInvoker)
+         if (beanInstance instanceof EndpointImpl)
          {
-            ((JBossWSInvoker) factory.getInvoker()).setTargetBean(factory.getServiceBean());
+            configureEndpoint((EndpointImpl) beanInstance);
          }
-         List<Endpoint> depEndpoints = dep.getService().getEndpoints();
-         if (depEndpoints != null)
+         if (beanInstance instanceof ServerFactoryBean)
          {
-            final String targetBeanName = factory.getServiceBean().getClass().getName();
-            for (Endpoint depEndpoint : depEndpoints)
+            ServerFactoryBean factory = (ServerFactoryBean) beanInstance;
+
+            if (factory.getInvoker() instanceof JBossWSInvoker)
+            {
+               ((JBossWSInvoker) factory.getInvoker()).setTargetBean(factory.getServiceBean());
+            }
+            List<Endpoint> depEndpoints = dep.getService().getEndpoints();
+            if (depEndpoints != null)
             {
-               if (depEndpoint.getTargetBeanClass().getName().equals(targetBeanName))
+               final String targetBeanName = factory.getServiceBean().getClass().getName();
+               for (Endpoint depEndpoint : depEndpoints)
                {
-                  depEndpoint.addAttachment(Object.class, factory.getServiceBean());
+                  if (depEndpoint.getTargetBeanClass().getName().equals(targetBeanName))
+                  {
+                     depEndpoint.addAttachment(Object.class, factory.getServiceBean());
+                  }
                }
             }
          }
-      }
-      if (beanInstance instanceof ServiceImpl) {
-         ServiceImpl service = (ServiceImpl) beanInstance;
-         List<Endpoint> depEndpoints = dep.getService().getEndpoints();
-         if (depEndpoints != null)
-         {
-            final Collection<org.apache.cxf.endpoint.Endpoint> eps = service.getEndpoints().values();
-            for (Endpoint depEp : depEndpoints) {
-               for (org.apache.cxf.endpoint.Endpoint ep : eps) {
-                  if (ep.getService().getName().equals(depEp.getProperty(Message.WSDL_SERVICE)) && ep.getEndpointInfo().getName().equals(depEp.getProperty(Message.WSDL_PORT))) {
-                     depEp.addAttachment(org.apache.cxf.endpoint.Endpoint.class, ep);
+         if (beanInstance instanceof ServiceImpl) {
+            ServiceImpl service = (ServiceImpl) beanInstance;
+            List<Endpoint> depEndpoints = dep.getService().getEndpoints();
+            if (depEndpoints != null)
+            {
+               final Collection<org.apache.cxf.endpoint.Endpoint> eps = service.getEndpoints().values();
+               for (Endpoint depEp : depEndpoints) {
+                  for (org.apache.cxf.endpoint.Endpoint ep : eps) {
+                     if (ep.getService().getName().equals(depEp.getProperty(Message.WSDL_SERVICE)) && ep.getEndpointInfo().getName().equals(depEp.getProperty(Message.WSDL_PORT))) {
+                        depEp.addAttachment(org.apache.cxf.endpoint.Endpoint.class, ep);
+                     }
                   }
                }
             }
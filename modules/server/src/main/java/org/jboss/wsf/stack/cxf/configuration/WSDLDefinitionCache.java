@@ -0,0 +1,360 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.configuration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+import javax.wsdl.Definition;
+import javax.wsdl.Import;
+
+import org.apache.cxf.service.model.SchemaInfo;
+import org.apache.cxf.wsdl.WSDLManager;
+import org.apache.cxf.wsdl11.ServiceSchemaInfo;
+import org.jboss.wsf.stack.cxf.Loggers;
+
+/**
+ * A cache of the WSDL definitions (and their schemas) parsed by deployment busses,
+ * which allows redeployments of unchanged archives to skip the WSDL and schema parsing.
+ * Cached definitions are owned by the deployment (name) they've been parsed for and
+ * are only given back to a new deployment with the same name, for the wsdl locations of
+ * its endpoints; they're reused only when the content of each of the documents they've
+ * been built from is unchanged, as well as the system properties (which can be referenced
+ * in the documents). Entries failing those checks are evicted.
+ *
+ * Restored entries are taken out of the cache, so that definitions are never shared by
+ * two live busses; when a deployment is undeployed, its entries are dropped unless the
+ * deployment is deployed again within a short grace period (as it happens on redeploy).
+ *
+ * Entries can't be persisted to disk, as neither the WSDL4J definitions nor the
+ * XmlSchema objects are serializable; for the same reason, JAXB contexts and databinding
+ * metadata (which are bound to the classes of a given deployment classloader) are not
+ * cached across redeployments.
+ */
+final class WSDLDefinitionCache
+{
+   private static final int MAX_DEPLOYMENTS = 64;
+   private static final long UNDEPLOY_GRACE_PERIOD = 60000;
+   private static final Map<String, DeploymentEntries> deployments = new LinkedHashMap<String, DeploymentEntries>(16, 0.75f, true)
+   {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, DeploymentEntries> eldest)
+      {
+         return size() > MAX_DEPLOYMENTS;
+      }
+   };
+
+   private WSDLDefinitionCache()
+   {
+      //NOOP
+   }
+
+   /**
+    * Installs the cached definitions of the provided deployment which are still valid into
+    * the provided WSDLManager; cached entries of the deployment are removed from the cache.
+    *
+    * @param deploymentName the deployment name
+    * @param wsdlLocations  the wsdl locations of the deployment endpoints
+    * @param wsdlManager    the WSDLManager of the deployment bus, before any definition is parsed
+    * @return the restored entries, to be provided to {@link #store(String, WSDLManager, Map)}
+    */
+   static Map<String, CacheEntry> restore(String deploymentName, Collection<String> wsdlLocations, WSDLManager wsdlManager)
+   {
+      final DeploymentEntries de;
+      synchronized (deployments)
+      {
+         de = deployments.remove(deploymentName);
+      }
+      if (de == null)
+      {
+         return Collections.emptyMap();
+      }
+      final Map<String, CacheEntry> restored = new HashMap<String, CacheEntry>();
+      final byte[] propsHash = systemPropertiesHash();
+      for (Map.Entry<String, CacheEntry> e : de.entries.entrySet())
+      {
+         final CacheEntry entry = e.getValue();
+         if (matches(e.getKey(), wsdlLocations) && entry.isValid(propsHash))
+         {
+            wsdlManager.addDefinition(e.getKey(), entry.definition);
+            if (entry.schemas != null)
+            {
+               wsdlManager.putSchemasForDefinition(entry.definition, entry.schemas);
+            }
+            restored.put(e.getKey(), entry);
+         }
+      }
+      return restored;
+   }
+
+   /**
+    * Stores the definitions parsed by the provided WSDLManager for the given deployment
+    *
+    * @param deploymentName the deployment name
+    * @param wsdlManager    the WSDLManager of the deployment bus, after the endpoints have been published
+    * @param restored       the entries previously restored for the deployment
+    */
+   static void store(String deploymentName, WSDLManager wsdlManager, Map<String, CacheEntry> restored)
+   {
+      final byte[] propsHash = systemPropertiesHash();
+      final Map<String, CacheEntry> entries = new HashMap<String, CacheEntry>();
+      for (Map.Entry<Object, Definition> e : wsdlManager.getDefinitions().entrySet())
+      {
+         if (!(e.getKey() instanceof String))
+         {
+            continue; //not parsed from a URL
+         }
+         final Definition def = e.getValue();
+         final CacheEntry restoredEntry = restored.get(e.getKey());
+         if (restoredEntry != null && restoredEntry.definition == def)
+         {
+            entries.put((String) e.getKey(), restoredEntry);
+            continue;
+         }
+         final ServiceSchemaInfo schemas = wsdlManager.getSchemasForDefinition(def);
+         final Map<String, byte[]> documents = new HashMap<String, byte[]>();
+         try
+         {
+            addDocuments(def, documents);
+            if (schemas != null)
+            {
+               for (SchemaInfo si : schemas.getSchemaList())
+               {
+                  addDocument(si.getSystemId(), documents);
+               }
+            }
+         }
+         catch (IOException ex)
+         {
+            Loggers.ROOT_LOGGER.debug("Not caching WSDL definition " + e.getKey(), ex);
+            continue;
+         }
+         entries.put((String) e.getKey(), new CacheEntry(def, schemas, documents, propsHash));
+      }
+      if (!entries.isEmpty())
+      {
+         synchronized (deployments)
+         {
+            deployments.put(deploymentName, new DeploymentEntries(entries));
+         }
+      }
+   }
+
+   /**
+    * Releases the entries of the provided deployment, which is being undeployed; the
+    * entries are dropped after a grace period, unless they're restored by a new deployment
+    * with the same name in the meantime.
+    *
+    * @param deploymentName the deployment name
+    */
+   static void release(final String deploymentName)
+   {
+      final DeploymentEntries de;
+      synchronized (deployments)
+      {
+         de = deployments.get(deploymentName);
+      }
+      if (de == null)
+      {
+         return;
+      }
+      CleanerTimer.INSTANCE.schedule(new TimerTask()
+      {
+         @Override
+         public void run()
+         {
+            synchronized (deployments)
+            {
+               if (deployments.get(deploymentName) == de)
+               {
+                  deployments.remove(deploymentName);
+               }
+            }
+         }
+      }, UNDEPLOY_GRACE_PERIOD);
+   }
+
+   private static boolean matches(String url, Collection<String> wsdlLocations)
+   {
+      for (String wsdlLocation : wsdlLocations)
+      {
+         if (wsdlLocation != null && url.endsWith(wsdlLocation))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static void addDocuments(Definition def, Map<String, byte[]> documents) throws IOException
+   {
+      if (def.getDocumentBaseURI() == null || documents.containsKey(def.getDocumentBaseURI()))
+      {
+         return;
+      }
+      addDocument(def.getDocumentBaseURI(), documents);
+      for (Object imports : def.getImports().values())
+      {
+         for (Object imp : (List<?>) imports)
+         {
+            final Definition importedDef = ((Import) imp).getDefinition();
+            if (importedDef != null)
+            {
+               addDocuments(importedDef, documents);
+            }
+         }
+      }
+   }
+
+   private static void addDocument(String location, Map<String, byte[]> documents) throws IOException
+   {
+      if (location != null && !documents.containsKey(location))
+      {
+         documents.put(location, hash(location));
+      }
+   }
+
+   private static byte[] hash(String location) throws IOException
+   {
+      final MessageDigest md = newDigest();
+      final InputStream is = new URL(location).openStream();
+      try
+      {
+         final byte[] buffer = new byte[8192];
+         int n;
+         while ((n = is.read(buffer)) != -1)
+         {
+            md.update(buffer, 0, n);
+         }
+      }
+      finally
+      {
+         is.close();
+      }
+      return md.digest();
+   }
+
+   private static byte[] systemPropertiesHash()
+   {
+      final MessageDigest md = newDigest();
+      final Properties props = System.getProperties();
+      final TreeMap<String, String> sorted = new TreeMap<String, String>();
+      for (String name : props.stringPropertyNames())
+      {
+         sorted.put(name, props.getProperty(name));
+      }
+      for (Map.Entry<String, String> e : sorted.entrySet())
+      {
+         md.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+         md.update((byte) 0);
+         md.update(e.getValue().getBytes(StandardCharsets.UTF_8));
+         md.update((byte) 0);
+      }
+      return md.digest();
+   }
+
+   private static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new RuntimeException(e);
+      }
+   }
+
+   static final class CacheEntry
+   {
+      private final Definition definition;
+      private final ServiceSchemaInfo schemas;
+      private final Map<String, byte[]> documents;
+      private final byte[] propsHash;
+
+      CacheEntry(Definition definition, ServiceSchemaInfo schemas, Map<String, byte[]> documents, byte[] propsHash)
+      {
+         this.definition = definition;
+         this.schemas = schemas;
+         this.documents = documents;
+         this.propsHash = propsHash;
+      }
+
+      boolean isValid(byte[] currentPropsHash)
+      {
+         if (!Arrays.equals(propsHash, currentPropsHash))
+         {
+            return false;
+         }
+         try
+         {
+            for (Map.Entry<String, byte[]> e : documents.entrySet())
+            {
+               if (!Arrays.equals(e.getValue(), hash(e.getKey())))
+               {
+                  return false;
+               }
+            }
+            return true;
+         }
+         catch (IOException e)
+         {
+            return false;
+         }
+      }
+   }
+
+   private static final class DeploymentEntries
+   {
+      private final Map<String, CacheEntry> entries;
+
+      DeploymentEntries(Map<String, CacheEntry> entries)
+      {
+         this.entries = entries;
+      }
+   }
+
+   /**
+    * Lazily created daemon timer dropping the entries of undeployed deployments
+    */
+   private static final class CleanerTimer
+   {
+      private static final Timer INSTANCE = new Timer("jbossws-wsdl-definition-cache-cleaner", true);
+   }
+}
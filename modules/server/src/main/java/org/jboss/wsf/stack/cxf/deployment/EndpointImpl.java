@@ -42,6 +42,7 @@ import org.jboss.wsf.spi.deployment.Deployment;
 import org.jboss.wsf.spi.management.ServerConfig;
 import org.jboss.wsf.spi.metadata.config.CommonConfig;
 import org.jboss.wsf.spi.metadata.config.SOAPAddressRewriteMetadata;
+import org.jboss.wsf.stack.cxf.JBossWSInvoker;
 import org.jboss.wsf.stack.cxf.Loggers;
 import org.jboss.wsf.stack.cxf.addressRewrite.SoapAddressRewriteHelper;
 import org.jboss.wsf.stack.cxf.client.configuration.FeatureUtils;
@@ -77,6 +78,11 @@ public class EndpointImpl extends org.apache.cxf.jaxws.EndpointImpl
    {
       super.getServerFactory().setBlockPostConstruct(true);
       super.doPublish(addr);
+      final Endpoint endpoint = getServer().getEndpoint();
+      if (endpoint.getService().getInvoker() instanceof JBossWSInvoker)
+      {
+         ((JBossWSInvoker) endpoint.getService().getInvoker()).prepareInvocationPlans(endpoint);
+      }
 
       //allow for configuration so that the wsdlPublisher can be set be the JBossWSCXFConfigurer
       configureObject(this);
@@ -22,36 +22,47 @@
 package org.jboss.wsf.stack.cxf.deployment;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
 
 import javax.wsdl.Definition;
 import javax.wsdl.WSDLException;
+import javax.wsdl.extensions.schema.Schema;
 import javax.wsdl.xml.WSDLWriter;
 import javax.xml.namespace.QName;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.cxf.Bus;
 import org.apache.cxf.helpers.FileUtils;
+import org.apache.cxf.helpers.LoadingByteArrayOutputStream;
 import org.apache.cxf.service.model.ServiceInfo;
-import org.apache.cxf.staxutils.StaxUtils;
 import org.apache.cxf.wsdl.WSDLManager;
 import org.apache.cxf.wsdl11.ServiceWSDLBuilder;
 import org.jboss.ws.common.utils.AbstractWSDLFilePublisher;
 import org.jboss.wsf.spi.deployment.ArchiveDeployment;
 import org.jboss.wsf.stack.cxf.Loggers;
 import org.jboss.wsf.stack.cxf.Messages;
-import org.w3c.dom.Document;
-import org.jboss.logging.Logger;
+import org.jboss.wsf.stack.cxf.client.Constants;
 
 /**
  * A WSDL file publisher for CXF based stack
@@ -63,47 +74,129 @@ import org.jboss.logging.Logger;
 public class WSDLFilePublisher extends AbstractWSDLFilePublisher
 {
    private static final String[] wsdlLocationPrefixes = {"vfsfile:", "file:", "jar:", "vfszip:"};
+   private final ConcurrentMap<File, Future<?>> publications = new ConcurrentHashMap<File, Future<?>>();
    
    public WSDLFilePublisher(ArchiveDeployment dep)
    {
       super(dep);
    }
    
-   /** Publish the deployed wsdl file to the data directory
+   /** Publish the deployed wsdl file to the data directory; the wsdl is published once per location,
+    * asynchronously if the bus has the org.jboss.ws.cxf.asyncWsdlPublish.enabled property set.
     */
-   public void publishWsdlFiles(QName serviceName, String wsdlLocation, Bus bus, List<ServiceInfo> serviceInfos) throws IOException
+   public void publishWsdlFiles(final QName serviceName, final String wsdlLocation, final Bus bus, final List<ServiceInfo> serviceInfos) throws IOException
    {
       String deploymentName = dep.getCanonicalName();
-      File wsdlFile = getPublishLocation(serviceName.getLocalPart(), deploymentName, wsdlLocation);
+      final File wsdlFile = getPublishLocation(serviceName.getLocalPart(), deploymentName, wsdlLocation);
       if (wsdlFile == null) return;
-      createParentDir(wsdlFile);
+      final boolean async = Boolean.TRUE.equals(bus.getProperty(Constants.JBWS_CXF_ASYNC_WSDL_PUBLISH_ENABLED));
+      final ClassLoader tccl = SecurityActions.getContextClassLoader();
+      final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>()
+      {
+         @Override
+         public Void call() throws Exception
+         {
+            final ClassLoader origClassLoader = SecurityActions.getContextClassLoader();
+            try
+            {
+               SecurityActions.setContextClassLoader(tccl);
+               publish(serviceName, wsdlLocation, wsdlFile, bus, serviceInfos);
+               return null;
+            }
+            finally
+            {
+               SecurityActions.setContextClassLoader(origClassLoader);
+            }
+         }
+      })
+      {
+         @Override
+         protected void done()
+         {
+            if (!isCancelled())
+            {
+               try
+               {
+                  get();
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               catch (ExecutionException e)
+               {
+                  //failed publications are forgotten, so that later endpoints sharing the wsdl can retry
+                  publications.remove(wsdlFile, this);
+                  if (async)
+                  {
+                     Loggers.DEPLOYMENT_LOGGER.cannotPublishWSDLTo(serviceName, wsdlFile, e.getCause());
+                  }
+               }
+            }
+         }
+      };
+      if (publications.putIfAbsent(wsdlFile, task) != null)
+      {
+         return; //already published by another endpoint sharing the same wsdl
+      }
+      dep.addAttachment(WSDLFilePublisher.class, this);
+      if (async)
+      {
+         PublisherExecutor.INSTANCE.execute(task);
+         return;
+      }
+      task.run();
+      try
+      {
+         task.get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      catch (ExecutionException e)
+      {
+         final Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException) cause;
+         }
+         throw Messages.MESSAGES.cannotPublishWSDLTo(serviceName, wsdlFile, cause);
+      }
+   }
+
+   private void publish(QName serviceName, String wsdlLocation, File wsdlFile, Bus bus, List<ServiceInfo> serviceInfos)
+   {
       try
       {
          // Write the wsdl def to file
          ServiceWSDLBuilder builder = new ServiceWSDLBuilder(bus, serviceInfos);
          Definition def = builder.build();
-
-         Document doc = getWsdlDocument(bus, def);
-         writeDocument(doc, wsdlFile);
+         if (def == null)
+         {
+            throw Messages.MESSAGES.wsdl20NotSupported();
+         }
+         createParentDir(wsdlFile);
+         writeDefinition(bus, def, wsdlFile);
 
          URL wsdlPublishURL = new URL(URLDecoder.decode(wsdlFile.toURI().toURL().toExternalForm(), "UTF-8"));
          Loggers.DEPLOYMENT_LOGGER.wsdlFilePublished(wsdlPublishURL);
 
          // Process the wsdl imports
-         if (def != null)
-         {
-            List<String> published = new LinkedList<String>();
-            String expLocation = getExpLocation(wsdlLocation);
-            publishWsdlImports(wsdlPublishURL, def, published, expLocation);
-
-            // Publish XMLSchema imports
-            publishSchemaImports(wsdlPublishURL, doc.getDocumentElement(), published, expLocation);
+         List<String> published = new LinkedList<String>();
+         String expLocation = getExpLocation(wsdlLocation);
+         publishWsdlImports(wsdlPublishURL, def, published, expLocation);
 
-            dep.addAttachment(WSDLFilePublisher.class, this);
-         }
-         else
+         // Publish XMLSchema imports
+         if (def.getTypes() != null)
          {
-            throw Messages.MESSAGES.wsdl20NotSupported();
+            for (Object ee : def.getTypes().getExtensibilityElements())
+            {
+               if (ee instanceof Schema)
+               {
+                  publishSchemaImports(wsdlPublishURL, ((Schema) ee).getElement(), published, expLocation);
+               }
+            }
          }
       }
       catch (RuntimeException rte)
@@ -118,6 +211,24 @@ public class WSDLFilePublisher extends AbstractWSDLFilePublisher
 
    public void unpublishWsdlFiles()
    {
+      // wait for pending asynchronous publications, so that no file is written after the removal
+      for (Future<?> f : publications.values())
+      {
+         try
+         {
+            f.get();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            break;
+         }
+         catch (Exception e)
+         {
+            //ignore, already logged
+         }
+      }
+      publications.clear();
       try
       {
          File parentDir = new File(serverConfig.getServerDataDir().getCanonicalPath() + "/wsdl");
@@ -140,39 +251,62 @@ public class WSDLFilePublisher extends AbstractWSDLFilePublisher
       }
    }
 
-   private static Document getWsdlDocument(Bus bus, Definition def) throws WSDLException
+   /**
+    * Serializes the definition straight to a buffer (no DOM is created) and writes it to the
+    * provided file, unless the file already has the same contents.
+    */
+   private static void writeDefinition(Bus bus, Definition def, File file) throws WSDLException, IOException
    {
       WSDLWriter wsdlWriter = bus.getExtension(WSDLManager.class).getWSDLFactory().newWSDLWriter();
       def.setExtensionRegistry(bus.getExtension(WSDLManager.class).getExtensionRegistry());
-      return wsdlWriter.getDocument(def);
-   }
-   
-   private static void writeDocument(Document doc, File file) throws IOException, XMLStreamException
-   {
-      String enc = null;
-      try
+      LoadingByteArrayOutputStream bout = new LoadingByteArrayOutputStream();
+      wsdlWriter.writeWSDL(def, bout);
+      final MessageDigest md = newDigest();
+      md.update(bout.getRawBytes(), 0, bout.size());
+      if (file.isFile() && MessageDigest.isEqual(md.digest(), hash(file)))
       {
-         enc = doc.getXmlEncoding();
+         return;
       }
-      catch (Exception ex)
+      FileOutputStream fos = new FileOutputStream(file);
+      try
       {
-         //ignore - not dom level 3
-         Logger.getLogger(WSDLFilePublisher.class).trace(ex);
+         fos.write(bout.getRawBytes(), 0, bout.size());
       }
-      if (enc == null)
+      finally
       {
-         enc = "utf-8";
+         fos.close();
       }
-      FileOutputStream fos = new FileOutputStream(new File(file.toURI()));
+   }
+
+   private static byte[] hash(File file) throws IOException
+   {
+      final MessageDigest md = newDigest();
+      final InputStream is = new FileInputStream(file);
       try
       {
-         XMLStreamWriter writer = StaxUtils.createXMLStreamWriter(fos, enc);
-         StaxUtils.writeNode(doc, writer, true);
-         writer.flush();
+         final byte[] buffer = new byte[8192];
+         int n;
+         while ((n = is.read(buffer)) != -1)
+         {
+            md.update(buffer, 0, n);
+         }
       }
       finally
       {
-         fos.close();
+         is.close();
+      }
+      return md.digest();
+   }
+
+   private static MessageDigest newDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new RuntimeException(e);
       }
    }
    
@@ -240,4 +374,21 @@ public class WSDLFilePublisher extends AbstractWSDLFilePublisher
          return wsdlLocation.startsWith("vfs:") && wsdlLocation.contains("/") ? wsdlLocation.substring(0, wsdlLocation.lastIndexOf("/") + 1) : "";
       }
    }
+
+   /**
+    * Lazily created single daemon thread executor shared by all the publishers
+    */
+   private static final class PublisherExecutor
+   {
+      private static final Executor INSTANCE = Executors.newSingleThreadExecutor(new ThreadFactory()
+      {
+         @Override
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "jbossws-wsdl-publisher");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }
 }
@@ -65,13 +65,14 @@ public final class BusDeploymentAspect extends AbstractDeploymentAspect
       final BusHolder holder = dep.removeAttachment(BusHolder.class);
       if (holder != null)
       {
-         holder.close();
-
+         //unpublish (waiting for pending asynchronous publications) before shutting down the bus
          WSDLFilePublisher wsdlFilePublisher = dep.getAttachment(WSDLFilePublisher.class);
          if (wsdlFilePublisher != null)
          {
            wsdlFilePublisher.unpublishWsdlFiles();
          }
+
+         holder.close();
       }
    }
 
@@ -0,0 +1,134 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.management;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.cxf.service.model.BindingOperationInfo;
+import org.jboss.wsf.spi.management.EndpointMetrics;
+
+/**
+ * A lock-free EndpointMetrics implementation, also keeping per-operation statistics.
+ * This replaces the default (synchronized) metrics on JBossWS-CXF endpoints, so that
+ * statistics can be kept enabled under load.
+ */
+public class EndpointStatistics extends RequestStatistics implements EndpointMetrics
+{
+   private static final int ENDPOINT_STRIPES = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+   private static final int OPERATION_STRIPES = 2;
+
+   private final ConcurrentMap<BindingOperationInfo, RequestStatistics> operations = new ConcurrentHashMap<BindingOperationInfo, RequestStatistics>();
+   private volatile Date startTime;
+   private volatile Date stopTime;
+
+   public EndpointStatistics()
+   {
+      super(ENDPOINT_STRIPES);
+      start();
+   }
+
+   /**
+    * Gets the statistics for the provided operation; these are
+    * lazily created, unless they have been created in advance
+    * (e.g. at endpoint publish time).
+    *
+    * @param bop   the binding operation info
+    * @return the operation statistics
+    */
+   public RequestStatistics getOperationStatistics(BindingOperationInfo bop)
+   {
+      final BindingOperationInfo key = bop.isUnwrapped() ? bop.getWrappedOperation() : bop;
+      RequestStatistics stats = operations.get(key);
+      if (stats == null)
+      {
+         stats = new RequestStatistics(OPERATION_STRIPES);
+         RequestStatistics existing = operations.putIfAbsent(key, stats);
+         if (existing != null)
+         {
+            stats = existing;
+         }
+      }
+      return stats;
+   }
+
+   public Map<BindingOperationInfo, RequestStatistics> getOperationStatistics()
+   {
+      return Collections.unmodifiableMap(operations);
+   }
+
+   @Override
+   public void start()
+   {
+      startTime = new Date();
+      stopTime = null;
+   }
+
+   @Override
+   public void stop()
+   {
+      stopTime = new Date();
+   }
+
+   @Override
+   public Date getStartTime()
+   {
+      return startTime;
+   }
+
+   @Override
+   public Date getStopTime()
+   {
+      return stopTime;
+   }
+
+   @Override
+   public long processRequestMessage()
+   {
+      return requestStarted();
+   }
+
+   @Override
+   public void processResponseMessage(long beginTime)
+   {
+      responseCompleted(beginTime);
+   }
+
+   @Override
+   public void processFaultMessage(long beginTime)
+   {
+      faultCompleted(beginTime);
+   }
+
+   @Override
+   public void reset()
+   {
+      super.reset();
+      for (RequestStatistics s : operations.values())
+      {
+         s.reset();
+      }
+   }
+}
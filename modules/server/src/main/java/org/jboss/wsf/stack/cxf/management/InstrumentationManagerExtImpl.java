@@ -5,9 +5,11 @@ import java.util.Iterator;
 import javax.management.JMException;
 import javax.management.MBeanServer;
 import javax.management.MBeanServerFactory;
+import javax.xml.namespace.QName;
 
 import org.apache.cxf.bus.ManagedBus;
 import org.apache.cxf.management.jmx.InstrumentationManagerImpl;
+import org.apache.cxf.service.model.BindingOperationInfo;
 import org.jboss.wsf.stack.cxf.Loggers;
 
 
@@ -41,6 +43,32 @@ public class InstrumentationManagerExtImpl extends InstrumentationManagerImpl
 
    }
 
+   /**
+    * Registers MBeans exposing the provided endpoint statistics, both at
+    * endpoint and operation level.
+    * 
+    * @param serviceName    the endpoint service name
+    * @param portName       the endpoint port name
+    * @param stats          the endpoint statistics
+    * @param operations     the endpoint binding operations
+    */
+   public void registerEndpointStatistics(QName serviceName, QName portName, EndpointStatistics stats, Iterable<BindingOperationInfo> operations)
+   {
+      try
+      {
+         register(new ManagedRequestStatistics(this.getBus(), serviceName, portName, null, stats));
+         for (BindingOperationInfo bop : operations)
+         {
+            register(new ManagedRequestStatistics(this.getBus(), serviceName, portName, bop.getName().getLocalPart(),
+                  stats.getOperationStatistics(bop)));
+         }
+      }
+      catch (JMException e)
+      {
+         Loggers.ROOT_LOGGER.errorRegisteringBus(this.getBus(), e);
+      }
+   }
+
    protected MBeanServer getJBossMbeanServer()
    {
 
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.management;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free, allocation-free latency histogram with log-linear buckets
+ * (HDR style): values below 16 are counted exactly, bigger values are
+ * counted in 8 linear sub-buckets for each power of 2, which gives a
+ * relative error below 12.5%.
+ *
+ * Counters are striped over a few arrays selected by thread id to reduce
+ * contention when recording from many threads.
+ */
+public final class LatencyHistogram
+{
+   private static final int SUB_BUCKET_BITS = 3;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int LINEAR_LIMIT = SUB_BUCKETS << 1;
+   private static final int LINEAR_LIMIT_EXP = SUB_BUCKET_BITS + 1;
+   private static final int MAX_EXP = 40;
+   static final int BUCKETS = LINEAR_LIMIT + (MAX_EXP - LINEAR_LIMIT_EXP) * SUB_BUCKETS;
+
+   private final int stripeMask;
+   private final AtomicLongArray counts;
+
+   /**
+    * @param stripes  the number of counter stripes, rounded up to a power of 2
+    */
+   public LatencyHistogram(int stripes)
+   {
+      int s = 1;
+      while (s < stripes)
+      {
+         s <<= 1;
+      }
+      this.stripeMask = s - 1;
+      this.counts = new AtomicLongArray(s * BUCKETS);
+   }
+
+   public void record(long value)
+   {
+      final int stripe = (int)(Thread.currentThread().getId() & stripeMask);
+      counts.incrementAndGet(stripe * BUCKETS + bucketIndex(value));
+   }
+
+   public long getCount()
+   {
+      long count = 0;
+      for (int i = 0; i < counts.length(); i++)
+      {
+         count += counts.get(i);
+      }
+      return count;
+   }
+
+   /**
+    * Returns the (bucket upper bound) value at the given percentile
+    *
+    * @param percentile  a value in the (0, 100] range
+    * @return the value at the given percentile, or 0 if nothing has been recorded
+    */
+   public long getValueAtPercentile(double percentile)
+   {
+      final long[] merged = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < counts.length(); i++)
+      {
+         final long c = counts.get(i);
+         merged[i % BUCKETS] += c;
+         total += c;
+      }
+      if (total == 0)
+      {
+         return 0;
+      }
+      final long target = Math.max(1, (long)Math.ceil(total * Math.min(percentile, 100.0) / 100.0));
+      long cumulative = 0;
+      for (int b = 0; b < BUCKETS; b++)
+      {
+         cumulative += merged[b];
+         if (cumulative >= target)
+         {
+            return bucketUpperBound(b);
+         }
+      }
+      return bucketUpperBound(BUCKETS - 1);
+   }
+
+   public void reset()
+   {
+      for (int i = 0; i < counts.length(); i++)
+      {
+         counts.set(i, 0);
+      }
+   }
+
+   static int bucketIndex(long value)
+   {
+      if (value < LINEAR_LIMIT)
+      {
+         return value < 0 ? 0 : (int)value;
+      }
+      final int exp = 63 - Long.numberOfLeadingZeros(value);
+      if (exp >= MAX_EXP)
+      {
+         return BUCKETS - 1;
+      }
+      final int sub = (int)(value >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return LINEAR_LIMIT + (exp - LINEAR_LIMIT_EXP) * SUB_BUCKETS + sub;
+   }
+
+   static long bucketUpperBound(int index)
+   {
+      if (index < LINEAR_LIMIT)
+      {
+         return index;
+      }
+      final int exp = (index - LINEAR_LIMIT) / SUB_BUCKETS + LINEAR_LIMIT_EXP;
+      final int sub = (index - LINEAR_LIMIT) % SUB_BUCKETS;
+      final int shift = exp - SUB_BUCKET_BITS;
+      return ((long)(SUB_BUCKETS + sub + 1) << shift) - 1;
+   }
+}
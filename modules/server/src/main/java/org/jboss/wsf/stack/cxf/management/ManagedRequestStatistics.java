@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.management;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.xml.namespace.QName;
+
+import org.apache.cxf.Bus;
+import org.apache.cxf.management.ManagedComponent;
+import org.apache.cxf.management.ManagementConstants;
+import org.apache.cxf.management.annotation.ManagedAttribute;
+import org.apache.cxf.management.annotation.ManagedOperation;
+import org.apache.cxf.management.annotation.ManagedResource;
+
+/**
+ * MBean exposing endpoint / operation request statistics
+ */
+@ManagedResource(componentName = "RequestStatistics", description = "JBossWS endpoint request statistics")
+public class ManagedRequestStatistics implements ManagedComponent
+{
+   private final Bus bus;
+   private final QName serviceName;
+   private final QName portName;
+   private final String operationName;
+   private final RequestStatistics statistics;
+
+   /**
+    * @param bus              the bus
+    * @param serviceName      the endpoint service name
+    * @param portName         the endpoint port name
+    * @param operationName    the operation name, or null for the endpoint level statistics
+    * @param statistics       the statistics to expose
+    */
+   public ManagedRequestStatistics(Bus bus, QName serviceName, QName portName, String operationName, RequestStatistics statistics)
+   {
+      this.bus = bus;
+      this.serviceName = serviceName;
+      this.portName = portName;
+      this.operationName = operationName;
+      this.statistics = statistics;
+   }
+
+   @Override
+   public ObjectName getObjectName() throws JMException
+   {
+      StringBuilder sb = new StringBuilder(ManagementConstants.DEFAULT_DOMAIN_NAME).append(':');
+      sb.append(ManagementConstants.BUS_ID_PROP).append('=').append(bus.getId()).append(',');
+      sb.append(ManagementConstants.TYPE_PROP).append('=');
+      sb.append(operationName == null ? "Bus.Service.Endpoint.Statistics" : "Bus.Service.Endpoint.Operation.Statistics").append(',');
+      sb.append(ManagementConstants.SERVICE_NAME_PROP).append('=').append(ObjectName.quote(serviceName.toString())).append(',');
+      sb.append(ManagementConstants.PORT_NAME_PROP).append('=').append(ObjectName.quote(portName.getLocalPart()));
+      if (operationName != null)
+      {
+         sb.append(',').append(ManagementConstants.OPERATION_NAME_PROP).append('=').append(ObjectName.quote(operationName));
+      }
+      return new ObjectName(sb.toString());
+   }
+
+   @ManagedAttribute(description = "Number of received requests")
+   public long getRequestCount()
+   {
+      return statistics.getRequestCount();
+   }
+
+   @ManagedAttribute(description = "Number of sent responses")
+   public long getResponseCount()
+   {
+      return statistics.getResponseCount();
+   }
+
+   @ManagedAttribute(description = "Number of sent faults")
+   public long getFaultCount()
+   {
+      return statistics.getFaultCount();
+   }
+
+   @ManagedAttribute(description = "Min processing time (ms)")
+   public long getMinProcessingTime()
+   {
+      return statistics.getMinProcessingTime();
+   }
+
+   @ManagedAttribute(description = "Max processing time (ms)")
+   public long getMaxProcessingTime()
+   {
+      return statistics.getMaxProcessingTime();
+   }
+
+   @ManagedAttribute(description = "Average processing time (ms)")
+   public long getAverageProcessingTime()
+   {
+      return statistics.getAverageProcessingTime();
+   }
+
+   @ManagedAttribute(description = "Total processing time (ms)")
+   public long getTotalProcessingTime()
+   {
+      return statistics.getTotalProcessingTime();
+   }
+
+   @ManagedAttribute(description = "50th percentile of processing time (us)")
+   public long getProcessingTimeP50()
+   {
+      return statistics.getProcessingTimePercentile(50);
+   }
+
+   @ManagedAttribute(description = "99th percentile of processing time (us)")
+   public long getProcessingTimeP99()
+   {
+      return statistics.getProcessingTimePercentile(99);
+   }
+
+   @ManagedAttribute(description = "99.9th percentile of processing time (us)")
+   public long getProcessingTimeP999()
+   {
+      return statistics.getProcessingTimePercentile(99.9);
+   }
+
+   @ManagedOperation(description = "Reset the statistics")
+   public void reset()
+   {
+      statistics.reset();
+   }
+}
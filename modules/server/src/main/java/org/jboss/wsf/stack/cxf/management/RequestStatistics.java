@@ -0,0 +1,168 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.management;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Lock-free request counters and processing time statistics; recording
+ * does not allocate (apart from the LongAdder cells being lazily created
+ * on first contention).
+ *
+ * Processing times are recorded in nanoseconds; the histogram keeps
+ * values in microseconds.
+ */
+public class RequestStatistics
+{
+   private static final LongBinaryOperator MIN = new LongBinaryOperator()
+   {
+      @Override
+      public long applyAsLong(long left, long right)
+      {
+         return Math.min(left, right);
+      }
+   };
+   private static final LongBinaryOperator MAX = new LongBinaryOperator()
+   {
+      @Override
+      public long applyAsLong(long left, long right)
+      {
+         return Math.max(left, right);
+      }
+   };
+
+   private final LongAdder requestCount = new LongAdder();
+   private final LongAdder responseCount = new LongAdder();
+   private final LongAdder faultCount = new LongAdder();
+   private final LongAdder totalProcessingTime = new LongAdder();
+   private final LongAccumulator minProcessingTime = new LongAccumulator(MIN, Long.MAX_VALUE);
+   private final LongAccumulator maxProcessingTime = new LongAccumulator(MAX, 0);
+   private final LatencyHistogram histogram;
+
+   public RequestStatistics(int stripes)
+   {
+      this.histogram = new LatencyHistogram(stripes);
+   }
+
+   /**
+    * Records the beginning of a request
+    *
+    * @return the begin time to be provided when recording the response / fault
+    */
+   public long requestStarted()
+   {
+      requestCount.increment();
+      return System.nanoTime();
+   }
+
+   public void responseCompleted(long beginTime)
+   {
+      responseCount.increment();
+      recordProcessingTime(System.nanoTime() - beginTime);
+   }
+
+   public void faultCompleted(long beginTime)
+   {
+      faultCount.increment();
+      recordProcessingTime(System.nanoTime() - beginTime);
+   }
+
+   private void recordProcessingTime(long nanos)
+   {
+      totalProcessingTime.add(nanos);
+      minProcessingTime.accumulate(nanos);
+      maxProcessingTime.accumulate(nanos);
+      histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+   }
+
+   public long getRequestCount()
+   {
+      return requestCount.sum();
+   }
+
+   public long getResponseCount()
+   {
+      return responseCount.sum();
+   }
+
+   public long getFaultCount()
+   {
+      return faultCount.sum();
+   }
+
+   /**
+    * @return the min processing time, in milliseconds
+    */
+   public long getMinProcessingTime()
+   {
+      final long min = minProcessingTime.get();
+      return min == Long.MAX_VALUE ? 0 : TimeUnit.NANOSECONDS.toMillis(min);
+   }
+
+   /**
+    * @return the max processing time, in milliseconds
+    */
+   public long getMaxProcessingTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(maxProcessingTime.get());
+   }
+
+   /**
+    * @return the total processing time, in milliseconds
+    */
+   public long getTotalProcessingTime()
+   {
+      return TimeUnit.NANOSECONDS.toMillis(totalProcessingTime.sum());
+   }
+
+   /**
+    * @return the average processing time, in milliseconds
+    */
+   public long getAverageProcessingTime()
+   {
+      final long count = responseCount.sum() + faultCount.sum();
+      return count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalProcessingTime.sum() / count) : 0;
+   }
+
+   /**
+    * @param percentile  a value in the (0, 100] range
+    * @return the processing time at the given percentile, in microseconds
+    */
+   public long getProcessingTimePercentile(double percentile)
+   {
+      return histogram.getValueAtPercentile(percentile);
+   }
+
+   public void reset()
+   {
+      requestCount.reset();
+      responseCount.reset();
+      faultCount.reset();
+      totalProcessingTime.reset();
+      minProcessingTime.reset();
+      maxProcessingTime.reset();
+      histogram.reset();
+   }
+}
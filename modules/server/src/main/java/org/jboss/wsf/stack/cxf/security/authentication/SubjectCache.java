@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.security.auth.Subject;
+
+/**
+ * A bounded cache of authenticated Subjects, keyed by a hash of the
+ * security domain, username and password; entries expire after the
+ * configured time-to-live and the least recently used entry is evicted
+ * when the max size is reached.
+ *
+ * Only clear text password credentials are meant to be cached: digest
+ * passwords differ on each message and always go through the nonce and
+ * timestamp verification and the actual authentication.
+ */
+public class SubjectCache
+{
+   public static final int DEFAULT_MAX_SIZE = 1000;
+   public static final long DEFAULT_TIME_TO_LIVE = 60;
+
+   private final int maxSize;
+   private final long timeToLiveNanos;
+   private final Map<CacheKey, CacheEntry> entries;
+   private final LongAdder hits = new LongAdder();
+   private final LongAdder misses = new LongAdder();
+
+   public SubjectCache()
+   {
+      this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+   }
+
+   /**
+    * @param maxSize          the max number of cached subjects
+    * @param timeToLive       the time-to-live of the cached subjects, in seconds
+    */
+   public SubjectCache(final int maxSize, long timeToLive)
+   {
+      this.maxSize = maxSize;
+      this.timeToLiveNanos = TimeUnit.SECONDS.toNanos(timeToLive);
+      this.entries = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest)
+         {
+            return size() > SubjectCache.this.maxSize;
+         }
+      };
+   }
+
+   /**
+    * Gets the cached subject for the provided credentials, if any
+    *
+    * @param securityDomain    the security domain name
+    * @param name              the username
+    * @param password          the password
+    * @return the cached Subject or null
+    */
+   public Subject get(String securityDomain, String name, String password)
+   {
+      final CacheKey key = new CacheKey(securityDomain, name, password);
+      final CacheEntry entry;
+      synchronized (entries)
+      {
+         entry = entries.get(key);
+         if (entry != null && entry.isExpired(timeToLiveNanos))
+         {
+            entries.remove(key);
+            misses.increment();
+            return null;
+         }
+      }
+      if (entry == null)
+      {
+         misses.increment();
+         return null;
+      }
+      hits.increment();
+      return entry.subject;
+   }
+
+   /**
+    * Caches a subject for the provided credentials
+    *
+    * @param securityDomain    the security domain name
+    * @param name              the username
+    * @param password          the password
+    * @param subject           the authenticated subject
+    */
+   public void put(String securityDomain, String name, String password, Subject subject)
+   {
+      final CacheKey key = new CacheKey(securityDomain, name, password);
+      synchronized (entries)
+      {
+         entries.put(key, new CacheEntry(subject));
+      }
+   }
+
+   public void clear()
+   {
+      synchronized (entries)
+      {
+         entries.clear();
+      }
+   }
+
+   public int getSize()
+   {
+      synchronized (entries)
+      {
+         return entries.size();
+      }
+   }
+
+   public int getMaxSize()
+   {
+      return maxSize;
+   }
+
+   public long getHitCount()
+   {
+      return hits.sum();
+   }
+
+   public long getMissCount()
+   {
+      return misses.sum();
+   }
+
+   private static final class CacheEntry
+   {
+      private final Subject subject;
+      private final long creationTime = System.nanoTime();
+
+      CacheEntry(Subject subject)
+      {
+         this.subject = subject;
+      }
+
+      boolean isExpired(long timeToLiveNanos)
+      {
+         return System.nanoTime() - creationTime > timeToLiveNanos;
+      }
+   }
+
+   /**
+    * Cache key storing a hash of the credentials, to avoid keeping clear
+    * text passwords in memory
+    */
+   private static final class CacheKey
+   {
+      private final byte[] hash;
+      private final int hashCode;
+
+      CacheKey(String securityDomain, String name, String password)
+      {
+         try
+         {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            update(md, securityDomain);
+            update(md, name);
+            update(md, password);
+            this.hash = md.digest();
+            this.hashCode = Arrays.hashCode(hash);
+         }
+         catch (NoSuchAlgorithmException e)
+         {
+            throw new RuntimeException(e);
+         }
+      }
+
+      private static void update(MessageDigest md, String s)
+      {
+         if (s != null)
+         {
+            md.update(s.getBytes(StandardCharsets.UTF_8));
+         }
+         md.update((byte)0);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hashCode;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         return obj instanceof CacheKey && Arrays.equals(hash, ((CacheKey)obj).hash);
+      }
+   }
+}
@@ -260,6 +260,11 @@ public class SubjectCreatingInterceptor extends WSS4JInInterceptor
       this.helper.setNonceStore(nonceStore);
    }
 
+   public void setSubjectCache(SubjectCache subjectCache)
+   {
+      this.helper.setSubjectCache(subjectCache);
+   }
+
    public void setDecodeNonce(boolean decodeNonce)
    {
       this.helper.setDecodeNonce(decodeNonce);
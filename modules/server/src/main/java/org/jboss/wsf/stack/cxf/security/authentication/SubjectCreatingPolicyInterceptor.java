@@ -177,6 +177,11 @@ public class SubjectCreatingPolicyInterceptor extends AbstractPhaseInterceptor<M
       this.helper.setNonceStore(nonceStore);
    }
 
+   public void setSubjectCache(SubjectCache subjectCache)
+   {
+      this.helper.setSubjectCache(subjectCache);
+   }
+
    public void setDecodeNonce(boolean decodeNonce)
    {
       this.helper.setDecodeNonce(decodeNonce);
@@ -35,12 +35,15 @@ import javax.security.auth.Subject;
 import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.cxf.common.security.SimplePrincipal;
+import org.apache.cxf.message.Message;
+import org.apache.cxf.phase.PhaseInterceptorChain;
 import org.jboss.security.auth.callback.CallbackHandlerPolicyContextHandler;
 import org.jboss.security.plugins.JBossAuthenticationManager;
 import org.jboss.ws.common.utils.DelegateClassLoader;
 import org.jboss.wsf.spi.classloading.ClassLoaderProvider;
 import org.jboss.wsf.spi.security.SecurityDomainContext;
 import org.jboss.wsf.stack.cxf.security.authentication.callback.UsernameTokenCallbackHandler;
+import org.jboss.wsf.stack.cxf.security.nonce.AtomicNonceStore;
 import org.jboss.wsf.stack.cxf.security.nonce.NonceStore;
 
 /**
@@ -62,6 +65,8 @@ public class SubjectCreator
    private NonceStore nonceStore;
 
    private boolean decodeNonce = true;
+
+   private SubjectCache subjectCache;
    
    public Subject createSubject(SecurityDomainContext ctx, String name, String password, boolean isDigest, byte[] nonce, String created)
    {
@@ -85,13 +90,29 @@ public class SubjectCreator
          CallbackHandlerPolicyContextHandler.setCallbackHandler(handler);
       }
 
-      // authenticate and populate Subject
-      
-
       Principal principal = new SimplePrincipal(name);
-      Subject subject = new Subject();
-
       boolean TRACE = SECURITY_LOGGER.isTraceEnabled();
+
+      // digest passwords change on each message, so only clear text credentials are cached
+      final SubjectCache cache = (isDigest || password == null) ? null : getSubjectCache();
+      Subject subject = (cache != null) ? cache.get(ctx.getSecurityDomain(), name, password) : null;
+      if (subject != null)
+      {
+         if (TRACE)
+            SECURITY_LOGGER.authenticated(name);
+
+         if (propagateContext)
+         {
+            ctx.pushSubjectContext(subject, principal, password);
+            if (TRACE)
+               SECURITY_LOGGER.securityContextPropagated(name);
+         }
+         return subject;
+      }
+
+      // authenticate and populate Subject
+      subject = new Subject();
+
       if (TRACE)
          SECURITY_LOGGER.aboutToAuthenticate(ctx.getSecurityDomain());
 
@@ -125,6 +146,11 @@ public class SubjectCreator
       if (TRACE)
          SECURITY_LOGGER.authenticated(name);
 
+      if (cache != null)
+      {
+         cache.put(ctx.getSecurityDomain(), name, password, subject);
+      }
+
       if (propagateContext)
       {
          ctx.pushSubjectContext(subject, principal, password);
@@ -155,13 +181,22 @@ public class SubjectCreator
          CallbackHandlerPolicyContextHandler.setCallbackHandler(handler);
       }
 
-      // authenticate and populate Subject
-      
-
       Principal principal = new SimplePrincipal(name);
-      Subject subject = new Subject();
-
       boolean TRACE = SECURITY_LOGGER.isTraceEnabled();
+
+      // digest passwords change on each message, so only clear text credentials are cached
+      final SubjectCache cache = (isDigest || password == null) ? null : getSubjectCache();
+      Subject subject = (cache != null) ? cache.get(manager.getSecurityDomain(), name, password) : null;
+      if (subject != null)
+      {
+         if (TRACE)
+            SECURITY_LOGGER.authenticated(name);
+         return subject;
+      }
+
+      // authenticate and populate Subject
+      subject = new Subject();
+
       if (TRACE)
          SECURITY_LOGGER.aboutToAuthenticate(manager.getSecurityDomain());
 
@@ -195,6 +230,11 @@ public class SubjectCreator
       if (TRACE)
          SECURITY_LOGGER.authenticated(name);
 
+      if (cache != null)
+      {
+         cache.put(manager.getSecurityDomain(), name, password, subject);
+      }
+
       return subject;
    }
    
@@ -234,9 +274,17 @@ public class SubjectCreator
 
       if (nonce != null && nonceStore != null)
       {
-         if (nonceStore.hasNonce(nonce))
-            throw MESSAGES.requestRejectedSameNonce(nonce);
-         nonceStore.putNonce(nonce);
+         if (nonceStore instanceof AtomicNonceStore)
+         {
+            if (!((AtomicNonceStore)nonceStore).putNonceIfAbsent(nonce))
+               throw MESSAGES.requestRejectedSameNonce(nonce);
+         }
+         else
+         {
+            if (nonceStore.hasNonce(nonce))
+               throw MESSAGES.requestRejectedSameNonce(nonce);
+            nonceStore.putNonce(nonce);
+         }
       }
    }
 
@@ -260,6 +308,32 @@ public class SubjectCreator
       this.decodeNonce = decodeNonce;
    }
 
+   public void setSubjectCache(SubjectCache subjectCache)
+   {
+      this.subjectCache = subjectCache;
+   }
+
+   /**
+    * Returns the SubjectCache explicitly set on this instance, if any,
+    * otherwise the one installed in the Bus of the message being
+    * currently processed, if any.
+    * 
+    * @return the SubjectCache to be used or null if subject caching is disabled
+    */
+   protected SubjectCache getSubjectCache()
+   {
+      if (subjectCache != null)
+      {
+         return subjectCache;
+      }
+      final Message msg = PhaseInterceptorChain.getCurrentMessage();
+      if (msg == null || msg.getExchange() == null || msg.getExchange().getBus() == null)
+      {
+         return null;
+      }
+      return msg.getExchange().getBus().getExtension(SubjectCache.class);
+   }
+
    private static DelegateClassLoader createDelegateClassLoader(final ClassLoader clientClassLoader, final ClassLoader origClassLoader)
    {
       SecurityManager sm = System.getSecurityManager();
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.nonce;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent in-memory nonce store.
+ *
+ * Nonces are kept in time buckets covering the configured timestamp threshold
+ * (which should match the one used for verifying the UsernameToken creation
+ * time); a bucket is dropped as a whole when it gets older than the threshold,
+ * so no entry scan is required for expiring nonces and the memory footprint is
+ * bounded by the number of nonces received within the threshold.
+ */
+public class InMemoryNonceStore implements AtomicNonceStore
+{
+   private static final int DEFAULT_TIMESTAMP_THRESHOLD = 300;
+   private static final int BUCKETS_PER_THRESHOLD = 10;
+
+   private final long bucketWidth;
+   private final AtomicReferenceArray<Bucket> buckets;
+
+   public InMemoryNonceStore()
+   {
+      this(DEFAULT_TIMESTAMP_THRESHOLD);
+   }
+
+   /**
+    * @param timestampThreshold   the timestamp threshold, in seconds
+    */
+   public InMemoryNonceStore(int timestampThreshold)
+   {
+      final long thresholdMillis = Math.max(1, timestampThreshold) * 1000L;
+      this.bucketWidth = (thresholdMillis + BUCKETS_PER_THRESHOLD - 1) / BUCKETS_PER_THRESHOLD;
+      //one additional bucket to make sure nonces are kept at least for the whole threshold
+      this.buckets = new AtomicReferenceArray<Bucket>(BUCKETS_PER_THRESHOLD + 1);
+   }
+
+   @Override
+   public boolean hasNonce(String nonce)
+   {
+      return contains(nonce, currentEpoch(), null);
+   }
+
+   @Override
+   public void putNonce(String nonce)
+   {
+      getBucket(currentEpoch()).nonces.add(nonce);
+   }
+
+   /**
+    * The nonce is first added to the current bucket, then the other live buckets
+    * are checked; two concurrent insertions of the same nonce hence can't both
+    * succeed, even when they happen across a bucket switch.
+    */
+   @Override
+   public boolean putNonceIfAbsent(String nonce)
+   {
+      final long epoch = currentEpoch();
+      final Bucket bucket = getBucket(epoch);
+      if (!bucket.nonces.add(nonce))
+      {
+         return false;
+      }
+      return !contains(nonce, epoch, bucket);
+   }
+
+   private boolean contains(String nonce, long epoch, Bucket skip)
+   {
+      for (int i = 0; i < buckets.length(); i++)
+      {
+         final Bucket b = buckets.get(i);
+         if (b != null && b != skip && b.epoch > epoch - buckets.length() && b.nonces.contains(nonce))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private Bucket getBucket(long epoch)
+   {
+      final int idx = (int)(epoch % buckets.length());
+      while (true)
+      {
+         final Bucket b = buckets.get(idx);
+         if (b != null && b.epoch >= epoch)
+         {
+            return b;
+         }
+         //drop the expired bucket (if any) as a whole
+         final Bucket nb = new Bucket(epoch);
+         if (buckets.compareAndSet(idx, b, nb))
+         {
+            return nb;
+         }
+      }
+   }
+
+   private long currentEpoch()
+   {
+      return System.currentTimeMillis() / bucketWidth;
+   }
+
+   private static final class Bucket
+   {
+      private final long epoch;
+      private final Set<String> nonces = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+      Bucket(long epoch)
+      {
+         this.epoch = epoch;
+      }
+   }
+}
@@ -0,0 +1,314 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.nonce;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jboss.wsf.stack.cxf.Loggers;
+
+/**
+ * A persistent nonce store backed by a memory-mapped file, which can be shared
+ * by multiple processes on the same host and survives restarts.
+ *
+ * The file contains a fixed-size open-addressing hash table of 64-bit nonce hashes,
+ * split in segments; each slot also records the epoch (in seconds) the nonce was
+ * stored at and slots older than the timestamp threshold are reused for new nonces.
+ * Probe sequences are bounded, so that lookup costs do not grow as the table fills up;
+ * live nonces are never evicted: when no empty or expired slot is available within the
+ * probe sequence of a new nonce, the store fails closed and the nonce is considered as
+ * already seen (hence the message is rejected). The capacity should therefore be sized
+ * well above the max number of nonces expected within the timestamp threshold (e.g. twice
+ * the peak number of messages per second times the threshold in seconds).
+ * Updates to a segment are serialized within the JVM by a lock and across processes
+ * by a file lock on the segment region. The whole file is loaded in memory when
+ * the store is opened, so lookups do not trigger disk reads.
+ * A single instance per file is meant to be used in each JVM.
+ */
+public class MappedFileNonceStore implements AtomicNonceStore, Closeable
+{
+   private static final int MAGIC = 0x4A424E53; //JBNS
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 64;
+   private static final int SLOT_SIZE = 16;
+   private static final int SEGMENTS = 64;
+   private static final int DEFAULT_CAPACITY = 1 << 20;
+   private static final int DEFAULT_TIMESTAMP_THRESHOLD = 300;
+   private static final int MAX_PROBES = 32;
+
+   private final File f;
+   private final RandomAccessFile file;
+   private final FileChannel channel;
+   private final MappedByteBuffer buffer;
+   private final int slotsPerSegment;
+   private final long timestampThreshold;
+   private final ReentrantLock[] locks = new ReentrantLock[SEGMENTS];
+
+   public MappedFileNonceStore(String path) throws IOException
+   {
+      this(new File(path), DEFAULT_CAPACITY, DEFAULT_TIMESTAMP_THRESHOLD);
+   }
+
+   /**
+    * @param f                    the backing file
+    * @param capacity             the max number of nonces in the store (rounded up to a multiple of the segments number);
+    *                             ignored if the file already exists
+    * @param timestampThreshold   the timestamp threshold, in seconds
+    * @throws IOException
+    */
+   public MappedFileNonceStore(File f, int capacity, int timestampThreshold) throws IOException
+   {
+      this.f = f;
+      this.timestampThreshold = timestampThreshold;
+      for (int i = 0; i < SEGMENTS; i++)
+      {
+         locks[i] = new ReentrantLock();
+      }
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+      boolean initialized = false;
+      try
+      {
+         final FileLock lock = channel.lock(0, HEADER_SIZE, false);
+         try
+         {
+            int sps;
+            if (channel.size() > 0)
+            {
+               if (channel.size() < HEADER_SIZE || file.readInt() != MAGIC)
+               {
+                  throw new IOException("Not a nonce store file: " + f);
+               }
+               if (file.readInt() != VERSION)
+               {
+                  throw new IOException("Unsupported nonce store file version: " + f);
+               }
+               sps = file.readInt();
+            }
+            else
+            {
+               sps = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+               file.setLength(HEADER_SIZE + (long)SEGMENTS * sps * SLOT_SIZE);
+               file.seek(0);
+               file.writeInt(MAGIC);
+               file.writeInt(VERSION);
+               file.writeInt(sps);
+            }
+            slotsPerSegment = sps;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long)SEGMENTS * sps * SLOT_SIZE);
+            buffer.load();
+         }
+         finally
+         {
+            lock.release();
+         }
+         initialized = true;
+      }
+      finally
+      {
+         if (!initialized)
+         {
+            file.close();
+         }
+      }
+   }
+
+   @Override
+   public boolean hasNonce(String nonce)
+   {
+      final long hash = hash(nonce);
+      final int segment = segment(hash);
+      final long now = now();
+      locks[segment].lock();
+      try
+      {
+         final FileLock fl = lockSegment(segment);
+         try
+         {
+            return find(segment, hash, now) >= 0;
+         }
+         finally
+         {
+            fl.release();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      finally
+      {
+         locks[segment].unlock();
+      }
+   }
+
+   @Override
+   public void putNonce(String nonce)
+   {
+      putNonceIfAbsent(nonce);
+   }
+
+   @Override
+   public boolean putNonceIfAbsent(String nonce)
+   {
+      final long hash = hash(nonce);
+      final int segment = segment(hash);
+      final long now = now();
+      locks[segment].lock();
+      try
+      {
+         final FileLock fl = lockSegment(segment);
+         try
+         {
+            if (find(segment, hash, now) >= 0)
+            {
+               return false;
+            }
+            return insert(segment, hash, now);
+         }
+         finally
+         {
+            fl.release();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new RuntimeException(e);
+      }
+      finally
+      {
+         locks[segment].unlock();
+      }
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      buffer.force();
+      channel.close();
+      file.close();
+   }
+
+   private int find(int segment, long hash, long now)
+   {
+      final int start = (int)((hash >>> 6) % slotsPerSegment);
+      final int probes = Math.min(MAX_PROBES, slotsPerSegment);
+      for (int i = 0; i < probes; i++)
+      {
+         final int slot = (start + i) % slotsPerSegment;
+         final int pos = position(segment, slot);
+         final long h = buffer.getLong(pos);
+         if (h == 0)
+         {
+            return -1; //end of probe chain
+         }
+         if (h == hash && !isExpired(buffer.getLong(pos + 8), now))
+         {
+            return slot;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * Stores the nonce in the first empty or expired slot of its probe sequence
+    *
+    * @return false if no slot is available (the store is full)
+    */
+   private boolean insert(int segment, long hash, long now)
+   {
+      final int start = (int)((hash >>> 6) % slotsPerSegment);
+      int target = -1;
+      final int probes = Math.min(MAX_PROBES, slotsPerSegment);
+      for (int i = 0; i < probes; i++)
+      {
+         final int slot = (start + i) % slotsPerSegment;
+         final int pos = position(segment, slot);
+         final long h = buffer.getLong(pos);
+         final long epoch = buffer.getLong(pos + 8);
+         if (h == 0 || isExpired(epoch, now))
+         {
+            //reuse the first empty or expired slot; expired slots are not emptied, to preserve probe chains
+            target = slot;
+            break;
+         }
+      }
+      if (target < 0)
+      {
+         //fail closed: evicting a live nonce would allow replaying it within the timestamp threshold
+         Loggers.SECURITY_LOGGER.nonceStoreFull(f.getPath());
+         return false;
+      }
+      final int pos = position(segment, target);
+      buffer.putLong(pos + 8, now);
+      buffer.putLong(pos, hash);
+      return true;
+   }
+
+   private boolean isExpired(long epoch, long now)
+   {
+      return now - epoch > timestampThreshold;
+   }
+
+   private FileLock lockSegment(int segment) throws IOException
+   {
+      return channel.lock(position(segment, 0), (long)slotsPerSegment * SLOT_SIZE, false);
+   }
+
+   private int position(int segment, int slot)
+   {
+      return (int)(HEADER_SIZE + ((long)segment * slotsPerSegment + slot) * SLOT_SIZE);
+   }
+
+   private static int segment(long hash)
+   {
+      return (int)(hash & (SEGMENTS - 1));
+   }
+
+   private static long now()
+   {
+      return System.currentTimeMillis() / 1000;
+   }
+
+   private static long hash(String nonce)
+   {
+      //FNV-1a, followed by a murmur3 finalizer
+      long h = 0xcbf29ce484222325L;
+      for (int i = 0; i < nonce.length(); i++)
+      {
+         h ^= nonce.charAt(i);
+         h *= 0x100000001b3L;
+      }
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h == 0 ? 1 : h;
+   }
+}
@@ -24,12 +24,17 @@ package org.jboss.wsf.stack.cxf.transport;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import org.apache.cxf.transport.http.AbstractHTTPDestination;
 import org.apache.cxf.transport.http.DestinationRegistryImpl;
 import org.jboss.logging.Logger;
 
 /**
  * A JBossWS version of the CXF DestinationRegistryImpl that registers destinations
  * with different key values.
+ * 
+ * Registered destinations are also indexed in a path prefix trie, so that
+ * request URIs can be routed to "catch-all" destinations (servlet-based endpoints
+ * with "/*" url-pattern) without iterating over all the available destinations.
  *
  * @author alessio.soldano@jboss.com
  * @since 23-Jan-2014
@@ -37,6 +42,68 @@ import org.jboss.logging.Logger;
  */
 public class JBossWSDestinationRegistryImpl extends DestinationRegistryImpl
 {
+   private final PathPrefixTrie<AbstractHTTPDestination> prefixTrie = new PathPrefixTrie<AbstractHTTPDestination>();
+
+   @Override
+   public synchronized void addDestination(AbstractHTTPDestination destination)
+   {
+      super.addDestination(destination);
+      prefixTrie.put(getTrimmedPath(destination.getEndpointInfo().getAddress()), destination);
+   }
+
+   @Override
+   public synchronized void removeDestination(String path)
+   {
+      super.removeDestination(path);
+      prefixTrie.remove(path);
+   }
+
+   /**
+    * Finds the destination for the provided request URI; the exact path match
+    * is tried first, then the destination registered with the longest path
+    * being a prefix of the request URI is returned.
+    * 
+    * @param requestURI  the request URI
+    * @return the matching destination or null if none is found
+    */
+   public AbstractHTTPDestination findDestination(String requestURI)
+   {
+      final String path = normalizePath(requestURI);
+      final AbstractHTTPDestination dest = getDestinationForPath(path, true);
+      if (dest != null)
+      {
+         return dest;
+      }
+      return prefixTrie.getLongestPrefixMatch(path);
+   }
+
+   /**
+    * Collapses multiple consecutive slashes in the provided path; the same
+    * string instance is returned when there's nothing to collapse.
+    * 
+    * @param path
+    * @return normalized path
+    */
+   static String normalizePath(String path)
+   {
+      int idx = path.indexOf("//");
+      if (idx < 0)
+      {
+         return path;
+      }
+      final StringBuilder sb = new StringBuilder(path.length());
+      sb.append(path, 0, idx + 1);
+      for (int i = idx + 1; i < path.length(); i++)
+      {
+         final char c = path.charAt(i);
+         if (c != '/' || sb.charAt(sb.length() - 1) != '/')
+         {
+            sb.append(c);
+         }
+      }
+      return sb.toString();
+   }
+
    /**
     * Return a real path value, removing the protocol, host and port
     * if specified.
@@ -0,0 +1,143 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.transport;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * A char based trie mapping path prefixes to values, used for longest-prefix
+ * matching of request URIs.
+ *
+ * The trie is rebuilt (copy-on-write) on each update, which is expected to
+ * happen at endpoint publish / stop time only; lookups are lock-free, do not
+ * allocate and cost O(path length), regardless of the number of mapped prefixes.
+ */
+final class PathPrefixTrie<T>
+{
+   private final Map<String, T> prefixes = new HashMap<String, T>();
+   private volatile Node<T> root = new Node<T>(null);
+
+   synchronized void put(String prefix, T value)
+   {
+      prefixes.put(prefix, value);
+      root = build(prefixes);
+   }
+
+   synchronized void remove(String prefix)
+   {
+      if (prefixes.remove(prefix) != null)
+      {
+         root = build(prefixes);
+      }
+   }
+
+   /**
+    * Returns the value mapped to the longest prefix of the provided path
+    *
+    * @param path  the path to match
+    * @return the value for the longest matching prefix, or null if no prefix matches
+    */
+   T getLongestPrefixMatch(String path)
+   {
+      Node<T> node = root;
+      T match = node.value;
+      final int length = path.length();
+      for (int i = 0; i < length && node != null; i++)
+      {
+         node = node.child(path.charAt(i));
+         if (node != null && node.value != null)
+         {
+            match = node.value;
+         }
+      }
+      return match;
+   }
+
+   private static <T> Node<T> build(Map<String, T> prefixes)
+   {
+      final Builder<T> rootBuilder = new Builder<T>();
+      for (Entry<String, T> e : prefixes.entrySet())
+      {
+         final String prefix = e.getKey();
+         Builder<T> b = rootBuilder;
+         for (int i = 0; i < prefix.length(); i++)
+         {
+            final Character c = prefix.charAt(i);
+            Builder<T> next = b.children.get(c);
+            if (next == null)
+            {
+               next = new Builder<T>();
+               b.children.put(c, next);
+            }
+            b = next;
+         }
+         b.value = e.getValue();
+      }
+      return rootBuilder.freeze();
+   }
+
+   private static final class Builder<T>
+   {
+      private final TreeMap<Character, Builder<T>> children = new TreeMap<Character, Builder<T>>();
+      private T value;
+
+      Node<T> freeze()
+      {
+         final Node<T> node = new Node<T>(value);
+         final int size = children.size();
+         node.keys = new char[size];
+         @SuppressWarnings("unchecked")
+         final Node<T>[] nodes = new Node[size];
+         int i = 0;
+         for (Entry<Character, Builder<T>> e : children.entrySet())
+         {
+            node.keys[i] = e.getKey();
+            nodes[i] = e.getValue().freeze();
+            i++;
+         }
+         node.children = nodes;
+         return node;
+      }
+   }
+
+   private static final class Node<T>
+   {
+      private final T value;
+      private char[] keys = new char[0];
+      private Node<T>[] children;
+
+      Node(T value)
+      {
+         this.value = value;
+      }
+
+      Node<T> child(char c)
+      {
+         final int idx = Arrays.binarySearch(keys, c);
+         return idx < 0 ? null : children[idx];
+      }
+   }
+}
@@ -139,6 +139,8 @@ public class ServletHelper
       }
       finally
       {
+         //when the invocation is moved to a virtual thread (see JBossWSInvoker), the request is suspended
+         //and we get here straight away; the resumed request goes through this method again
          EndpointAssociation.removeEndpoint();
          BusFactory.setThreadDefaultBus(null);
       }
@@ -0,0 +1,62 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.management;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the latency histogram used in endpoint statistics
+ */
+public class LatencyHistogramTest extends TestCase
+{
+   public void testBucketBoundaries()
+   {
+      for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++)
+      {
+         final long upperBound = LatencyHistogram.bucketUpperBound(i);
+         assertEquals(i, LatencyHistogram.bucketIndex(upperBound));
+         assertEquals(i + 1, LatencyHistogram.bucketIndex(upperBound + 1));
+      }
+      assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+   }
+
+   public void testPercentiles()
+   {
+      LatencyHistogram histogram = new LatencyHistogram(4);
+      assertEquals(0, histogram.getValueAtPercentile(50));
+      for (int i = 1; i <= 1000; i++)
+      {
+         histogram.record(i);
+      }
+      assertEquals(1000, histogram.getCount());
+      assertValueWithinError(500, histogram.getValueAtPercentile(50));
+      assertValueWithinError(990, histogram.getValueAtPercentile(99));
+      assertValueWithinError(999, histogram.getValueAtPercentile(99.9));
+      histogram.reset();
+      assertEquals(0, histogram.getCount());
+   }
+
+   private static void assertValueWithinError(long expected, long actual)
+   {
+      assertTrue("Expected ~" + expected + " but got " + actual, actual >= expected && actual <= expected * 1.125);
+   }
+}
@@ -0,0 +1,67 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.authentication;
+
+import javax.security.auth.Subject;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the authenticated subject cache
+ */
+public class SubjectCacheTest extends TestCase
+{
+   public void testHitAndMiss()
+   {
+      SubjectCache cache = new SubjectCache(10, 60);
+      Subject subject = new Subject();
+      assertNull(cache.get("domain", "kermit", "thefrog"));
+      cache.put("domain", "kermit", "thefrog", subject);
+      assertSame(subject, cache.get("domain", "kermit", "thefrog"));
+      assertNull(cache.get("domain", "kermit", "wrong"));
+      assertNull(cache.get("other-domain", "kermit", "thefrog"));
+      assertEquals(1, cache.getHitCount());
+      assertEquals(3, cache.getMissCount());
+   }
+
+   public void testLRUEviction()
+   {
+      SubjectCache cache = new SubjectCache(2, 60);
+      cache.put("domain", "a", "pwd", new Subject());
+      cache.put("domain", "b", "pwd", new Subject());
+      assertNotNull(cache.get("domain", "a", "pwd"));
+      cache.put("domain", "c", "pwd", new Subject());
+      assertEquals(2, cache.getSize());
+      assertNotNull(cache.get("domain", "a", "pwd"));
+      assertNull(cache.get("domain", "b", "pwd"));
+      assertNotNull(cache.get("domain", "c", "pwd"));
+   }
+
+   public void testExpiration() throws Exception
+   {
+      SubjectCache cache = new SubjectCache(10, 0);
+      cache.put("domain", "kermit", "thefrog", new Subject());
+      Thread.sleep(5);
+      assertNull(cache.get("domain", "kermit", "thefrog"));
+      assertEquals(0, cache.getSize());
+   }
+}
@@ -0,0 +1,57 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.nonce;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the in-memory nonce store
+ */
+public class InMemoryNonceStoreTest extends TestCase
+{
+   public void testPutNonceIfAbsent()
+   {
+      InMemoryNonceStore store = new InMemoryNonceStore();
+      assertFalse(store.hasNonce("abc"));
+      assertTrue(store.putNonceIfAbsent("abc"));
+      assertTrue(store.hasNonce("abc"));
+      assertFalse(store.putNonceIfAbsent("abc"));
+      assertTrue(store.putNonceIfAbsent("def"));
+   }
+
+   public void testPutAndHasNonce()
+   {
+      InMemoryNonceStore store = new InMemoryNonceStore(60);
+      store.putNonce("abc");
+      assertTrue(store.hasNonce("abc"));
+      assertFalse(store.putNonceIfAbsent("abc"));
+   }
+
+   public void testExpiration() throws Exception
+   {
+      InMemoryNonceStore store = new InMemoryNonceStore(1);
+      assertTrue(store.putNonceIfAbsent("abc"));
+      Thread.sleep(1300);
+      assertFalse(store.hasNonce("abc"));
+      assertTrue(store.putNonceIfAbsent("abc"));
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.security.nonce;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the memory-mapped file nonce store
+ */
+public class MappedFileNonceStoreTest extends TestCase
+{
+   private File file;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      file = File.createTempFile("nonces", ".dat");
+      file.delete();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      file.delete();
+   }
+
+   public void testPutNonceIfAbsent() throws Exception
+   {
+      MappedFileNonceStore store = new MappedFileNonceStore(file, 1024, 300);
+      try
+      {
+         assertFalse(store.hasNonce("abc"));
+         assertTrue(store.putNonceIfAbsent("abc"));
+         assertTrue(store.hasNonce("abc"));
+         assertFalse(store.putNonceIfAbsent("abc"));
+         assertTrue(store.putNonceIfAbsent("def"));
+      }
+      finally
+      {
+         store.close();
+      }
+   }
+
+   public void testPersistence() throws Exception
+   {
+      MappedFileNonceStore store = new MappedFileNonceStore(file, 1024, 300);
+      try
+      {
+         store.putNonce("abc");
+      }
+      finally
+      {
+         store.close();
+      }
+      store = new MappedFileNonceStore(file, 1024, 300);
+      try
+      {
+         assertTrue(store.hasNonce("abc"));
+         assertFalse(store.putNonceIfAbsent("abc"));
+      }
+      finally
+      {
+         store.close();
+      }
+   }
+
+   public void testExpiration() throws Exception
+   {
+      MappedFileNonceStore store = new MappedFileNonceStore(file, 1024, 1);
+      try
+      {
+         assertTrue(store.putNonceIfAbsent("abc"));
+         Thread.sleep(2300);
+         assertFalse(store.hasNonce("abc"));
+         assertTrue(store.putNonceIfAbsent("abc"));
+      }
+      finally
+      {
+         store.close();
+      }
+   }
+
+   public void testFullStoreRejectsNonces() throws Exception
+   {
+      //one slot per segment
+      MappedFileNonceStore store = new MappedFileNonceStore(file, 1, 300);
+      try
+      {
+         List<String> stored = new ArrayList<String>();
+         boolean rejected = false;
+         for (int i = 0; i < 1000; i++)
+         {
+            String nonce = "nonce" + i;
+            if (store.putNonceIfAbsent(nonce))
+            {
+               stored.add(nonce);
+            }
+            else
+            {
+               rejected = true;
+            }
+         }
+         assertTrue(rejected);
+         //no live nonce is ever evicted
+         for (String nonce : stored)
+         {
+            assertTrue(store.hasNonce(nonce));
+            assertFalse(store.putNonceIfAbsent(nonce));
+         }
+      }
+      finally
+      {
+         store.close();
+      }
+   }
+
+   public void testInvalidFile() throws Exception
+   {
+      FileOutputStream fos = new FileOutputStream(file);
+      try
+      {
+         fos.write(new byte[128]);
+      }
+      finally
+      {
+         fos.close();
+      }
+      try
+      {
+         new MappedFileNonceStore(file, 1024, 300);
+         fail("IOException expected");
+      }
+      catch (IOException e)
+      {
+         //expected
+      }
+      assertEquals(128, file.length());
+   }
+}
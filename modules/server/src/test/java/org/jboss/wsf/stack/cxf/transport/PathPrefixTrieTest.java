@@ -0,0 +1,65 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2016, Red Hat Middleware LLC, and individual contributors
+ * as indicated by the @author tags. See the copyright.txt file in the
+ * distribution for a full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.wsf.stack.cxf.transport;
+
+import junit.framework.TestCase;
+
+/**
+ * A test case for the destination path prefix trie
+ */
+public class PathPrefixTrieTest extends TestCase
+{
+   public void testLongestPrefixMatch()
+   {
+      PathPrefixTrie<String> trie = new PathPrefixTrie<String>();
+      assertNull(trie.getLongestPrefixMatch("/foo"));
+      trie.put("/foo", "A");
+      trie.put("/foo/bar", "B");
+      trie.put("/other", "C");
+      assertEquals("A", trie.getLongestPrefixMatch("/foo"));
+      assertEquals("A", trie.getLongestPrefixMatch("/foo/ba"));
+      assertEquals("B", trie.getLongestPrefixMatch("/foo/bar/baz"));
+      assertEquals("C", trie.getLongestPrefixMatch("/other/x"));
+      assertNull(trie.getLongestPrefixMatch("/fo"));
+      assertNull(trie.getLongestPrefixMatch(""));
+   }
+
+   public void testRemove()
+   {
+      PathPrefixTrie<String> trie = new PathPrefixTrie<String>();
+      trie.put("/foo", "A");
+      trie.put("/foo/bar", "B");
+      trie.remove("/foo/bar");
+      assertEquals("A", trie.getLongestPrefixMatch("/foo/bar/baz"));
+      trie.remove("/foo");
+      assertNull(trie.getLongestPrefixMatch("/foo/bar/baz"));
+      trie.remove("/notThere");
+   }
+
+   public void testNormalizePath()
+   {
+      final String path = "/ctx/endpoint";
+      assertSame(path, JBossWSDestinationRegistryImpl.normalizePath(path));
+      assertEquals("/ctx/endpoint", JBossWSDestinationRegistryImpl.normalizePath("//ctx///endpoint"));
+      assertEquals("/ctx/endpoint/", JBossWSDestinationRegistryImpl.normalizePath("/ctx/endpoint//"));
+   }
+}
@@ -33,6 +33,9 @@ import org.apache.cxf.BusFactory;
 import org.apache.cxf.frontend.ClientProxy;
 import org.apache.cxf.transport.http.HTTPConduit;
 import org.apache.cxf.transport.http.HTTPConduitFactory;
+import org.apache.cxf.transport.http.URLConnectionHTTPConduit;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduit;
+import org.apache.cxf.transport.http.asyncclient.AsyncHTTPConduitFactory;
 import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.container.test.api.RunAsClient;
@@ -145,7 +148,57 @@ public class HTTPConduitTestCase extends JBossWSTest
       }
    }
    
+   @Test
+   @RunAsClient
+   public void testURLConnectionConduit() throws Exception {
+      Bus bus = BusFactory.newInstance().createBus();
+      BusFactory.setThreadDefaultBus(bus);
+      try {
+         Map<String, Object> map = new HashMap<String, Object>();
+         map.put(Constants.CXF_CLIENT_CONDUIT, Constants.CXF_CLIENT_CONDUIT_URLCONNECTION);
+         map.put(Constants.CXF_CLIENT_RECEIVE_TIMEOUT, 163840L);
+         replaceWrapper(map, bus);
+         
+         URL wsdlURL = new URL(baseURL + "/ServiceOne" + "?wsdl");
+         Service service = Service.create(wsdlURL, new QName("http://org.jboss.ws.jaxws.cxf/httpConduit", "ServiceOne"));
+         EndpointOne port = service.getPort(new QName("http://org.jboss.ws.jaxws.cxf/httpConduit", "EndpointOnePort"), EndpointOne.class);
+         
+         HTTPConduit conduit = (HTTPConduit)ClientProxy.getClient(port).getConduit();
+         assertTrue(conduit instanceof URLConnectionHTTPConduit);
+         assertFalse(conduit instanceof AsyncHTTPConduit);
+         assertEquals(163840, conduit.getClient().getReceiveTimeout());
+         
+         assertEquals("Foo", port.echo("Foo"));
+      } finally {
+         bus.shutdown(true);
+      }
+   }
    
+   @Test
+   @RunAsClient
+   public void testAsyncConduit() throws Exception {
+      Bus bus = BusFactory.newInstance().createBus();
+      BusFactory.setThreadDefaultBus(bus);
+      try {
+         Map<String, Object> map = new HashMap<String, Object>();
+         map.put(Constants.CXF_CLIENT_CONDUIT, Constants.CXF_CLIENT_CONDUIT_ASYNC);
+         map.put(Constants.CXF_CLIENT_ASYNC_MAX_CONNECTIONS, 10);
+         map.put(Constants.CXF_CLIENT_ASYNC_MAX_PER_HOST_CONNECTIONS, 5);
+         DefaultHTTPConduitFactoryWrapper w = replaceWrapper(map, bus);
+         assertTrue(w.getDelegate() instanceof AsyncHTTPConduitFactory);
+         
+         URL wsdlURL = new URL(baseURL + "/ServiceOne" + "?wsdl");
+         Service service = Service.create(wsdlURL, new QName("http://org.jboss.ws.jaxws.cxf/httpConduit", "ServiceOne"));
+         EndpointOne port = service.getPort(new QName("http://org.jboss.ws.jaxws.cxf/httpConduit", "EndpointOnePort"), EndpointOne.class);
+         
+         HTTPConduit conduit = (HTTPConduit)ClientProxy.getClient(port).getConduit();
+         assertTrue(conduit instanceof AsyncHTTPConduit);
+         
+         assertEquals("Foo", port.echo("Foo"));
+      } finally {
+         bus.shutdown(true);
+      }
+   }
    
    private DefaultHTTPConduitFactoryWrapper replaceWrapper(Map<String, Object> args, Bus bus)
    {